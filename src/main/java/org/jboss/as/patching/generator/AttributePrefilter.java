@@ -0,0 +1,141 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap change detection based on the file attributes, before falling back to comparing the content hashes.
+ * <p/>
+ * A different size means the content changed, which is only conclusive if the comparison hash is a plain hash of the
+ * content (e.g. not for jars or modules with detailed inspection). If modification times are trusted, the same size
+ * and modification time is taken as unchanged, without hashing at all.
+ *
+ * @author agent
+ */
+class AttributePrefilter {
+
+    enum Result {
+        MODIFIED,
+        UNCHANGED,
+        UNKNOWN,
+    }
+
+    protected static volatile boolean enabled = false;
+    protected static volatile boolean trustLastModified = false;
+
+    private static final AtomicLong decided = new AtomicLong();
+    private static final AtomicLong total = new AtomicLong();
+
+    private AttributePrefilter() {
+        //
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compare two module items, based on the attributes of their module directories.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     * @return the result
+     */
+    static Result compare(final DistributionModuleItem original, final DistributionModuleItem updated) {
+        return compare(original.getContentItem(), updated.getContentItem());
+    }
+
+    /**
+     * Compare two content items with the same path.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     * @return the result, {@code UNKNOWN} if the hashes need to be compared
+     */
+    static Result compare(final DistributionContentItem original, final DistributionContentItem updated) {
+        // The same physical file is unchanged, which does not need any further attributes
+        final FileKeyIndex index = FileKeyIndex.current;
+        if (index != null && original instanceof DistributionItemFileImpl && updated instanceof DistributionItemFileImpl
+                && index.isSameFile((DistributionItemFileImpl) original, (DistributionItemFileImpl) updated)) {
+            return Result.UNCHANGED;
+        }
+        if (!enabled) {
+            return Result.UNKNOWN;
+        }
+        total.incrementAndGet();
+        // Snapshots don't have any attributes
+        if (!(original instanceof DistributionItemFileImpl) || !(updated instanceof DistributionItemFileImpl)) {
+            return Result.UNKNOWN;
+        }
+        final Result result = compareAttributes((DistributionItemFileImpl) original, (DistributionItemFileImpl) updated);
+        if (result != Result.UNKNOWN) {
+            decided.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate two items with the same path while processing the distributions, to decide which hashes are needed
+     * for the comparison later on. Unlike {@link #compare(DistributionContentItem, DistributionContentItem)} this is
+     * not counted as a comparison.
+     *
+     * @param original the item of one distribution
+     * @param updated  the item of the other distribution
+     * @return the result, {@code UNKNOWN} if the hashes need to be compared
+     */
+    static Result evaluate(final DistributionItemFileImpl original, final DistributionItemFileImpl updated) {
+        if (FileKeyIndex.current != null && FileKeyIndex.hasSameFileKey(original, updated)) {
+            return Result.UNCHANGED;
+        }
+        return enabled ? compareAttributes(original, updated) : Result.UNKNOWN;
+    }
+
+    private static Result compareAttributes(final DistributionItemFileImpl o, final DistributionItemFileImpl n) {
+        try {
+            final ContentStamp os = o.getStamp();
+            final ContentStamp ns = n.getStamp();
+            if (os.getSize() != ns.getSize()) {
+                return JarDiffUtils.isRawComparison(n.getFileSystemPath(), n) ? Result.MODIFIED : Result.UNKNOWN;
+            } else if (trustLastModified && os.getLastModified() == ns.getLastModified() && os.getEntries() == ns.getEntries()) {
+                return Result.UNCHANGED;
+            }
+            return Result.UNKNOWN;
+        } catch (IOException e) {
+            throw processingError(e, "failed to read the attributes of %s", n.getFileSystemPath());
+        }
+    }
+
+    /**
+     * Print how many comparisons were decided without hashing.
+     */
+    static void report() {
+        if (enabled) {
+            System.out.printf("INFO: prefilter decided %d of %d comparisons without hashing%n", decided.get(), total.get());
+        }
+    }
+
+}
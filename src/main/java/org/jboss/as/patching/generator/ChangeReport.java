@@ -0,0 +1,252 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Report of the changed entries of the jars in modified modules and misc files, written as JSON next to the patch.
+ * <p/>
+ * The entries are compared with the same normalization as the comparison hashes, based on the central directories
+ * of the jars, see {@link JarDiffUtils#compareEntries(Path, Path, Jar)}. Only content available on the file system
+ * is reported, snapshots do not contain the entries of the jars.
+ *
+ * @author agent
+ */
+class ChangeReport {
+
+    /**
+     * The report populated when comparing the distributions, {@code null} if disabled.
+     */
+    static volatile ChangeReport current;
+
+    private static final String LF = "\n";
+
+    private final File file;
+    private final List<Jar> jars = new ArrayList<Jar>();
+
+    ChangeReport(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Report the jars of a modified module. The resource roots are matched by their position like for the comparison
+     * hashes, so that a jar with a new version in its name is compared to the old one.
+     *
+     * @param layer    the layer or add-on name
+     * @param original the original module
+     * @param updated  the updated module
+     */
+    void modifiedModule(final String layer, final DistributionModuleItem original, final DistributionModuleItem updated) {
+        if (!(original.getContentItem() instanceof DistributionItemFileImpl) || !(updated.getContentItem() instanceof DistributionItemFileImpl)) {
+            return;
+        }
+        final DistributionItemFileImpl o = (DistributionItemFileImpl) original.getContentItem();
+        final DistributionItemFileImpl n = (DistributionItemFileImpl) updated.getContentItem();
+        final String module = updated.getName() + ':' + updated.getSlot();
+        try {
+            if (!Files.exists(o.getFileSystemPath().resolve("module.xml")) || !Files.exists(n.getFileSystemPath().resolve("module.xml"))) {
+                return;
+            }
+            final List<String> originalResources = getJars(o.getModuleXml().getResources());
+            final List<String> updatedResources = getJars(n.getModuleXml().getResources());
+            if (originalResources.size() == updatedResources.size()) {
+                for (int i = 0; i < updatedResources.size(); i++) {
+                    compare(layer, module, o.getFileSystemPath(), originalResources.get(i), n.getFileSystemPath(), updatedResources.get(i));
+                }
+            } else {
+                for (final String path : originalResources) {
+                    compare(layer, module, o.getFileSystemPath(), path, n.getFileSystemPath(), updatedResources.contains(path) ? path : null);
+                }
+                for (final String path : updatedResources) {
+                    if (!originalResources.contains(path)) {
+                        compare(layer, module, o.getFileSystemPath(), null, n.getFileSystemPath(), path);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw processingError(e, "failed to compare the jars of module %s", module);
+        }
+    }
+
+    /**
+     * Report a modified misc file, if it is a jar.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     */
+    void modifiedFile(final DistributionContentItem original, final DistributionContentItem updated) {
+        if (!updated.isLeaf() || !JarDiffUtils.isJar(updated.getName())
+                || !(original instanceof DistributionItemFileImpl) || !(updated instanceof DistributionItemFileImpl)) {
+            return;
+        }
+        final String path = updated.getPath('/');
+        final Jar jar = new Jar(null, null, path, path);
+        try {
+            JarDiffUtils.compareEntries(((DistributionItemFileImpl) original).getFileSystemPath(), ((DistributionItemFileImpl) updated).getFileSystemPath(), jar);
+        } catch (IOException e) {
+            throw processingError(e, "failed to compare the jar %s", path);
+        }
+        add(jar);
+    }
+
+    /**
+     * Write the report.
+     *
+     * @throws IOException
+     */
+    void write() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{").append(LF);
+        builder.append("  \"jars\": [");
+        synchronized (jars) {
+            final Iterator<Jar> i = jars.iterator();
+            while (i.hasNext()) {
+                final Jar jar = i.next();
+                builder.append(LF).append("    {").append(LF);
+                if (jar.layer != null) {
+                    appendField(builder, "layer", jar.layer);
+                    appendField(builder, "module", jar.module);
+                }
+                if (jar.originalPath != null && !jar.originalPath.equals(jar.path)) {
+                    appendField(builder, "original-path", jar.originalPath);
+                }
+                appendField(builder, "path", jar.path);
+                appendEntries(builder, "added", jar.added).append(",").append(LF);
+                appendEntries(builder, "removed", jar.removed).append(",").append(LF);
+                appendEntries(builder, "changed", jar.changed).append(LF);
+                builder.append("    }");
+                if (i.hasNext()) {
+                    builder.append(",");
+                }
+            }
+            builder.append(jars.isEmpty() ? "]" : LF + "  ]").append(LF);
+        }
+        builder.append("}").append(LF);
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(builder.toString());
+        } finally {
+            writer.close();
+        }
+        System.out.printf("INFO: wrote the changed entries of %d jars to %s%n", jars.size(), file.getAbsolutePath());
+    }
+
+    private void compare(final String layer, final String module, final Path originalRoot, final String originalPath,
+                         final Path updatedRoot, final String updatedPath) throws IOException {
+        final Path o = originalPath == null ? null : originalRoot.resolve(originalPath);
+        final Path n = updatedPath == null ? null : updatedRoot.resolve(updatedPath);
+        final Jar jar = new Jar(layer, module, originalPath, updatedPath == null ? originalPath : updatedPath);
+        JarDiffUtils.compareEntries(o != null && Files.isRegularFile(o) ? o : null, n != null && Files.isRegularFile(n) ? n : null, jar);
+        add(jar);
+    }
+
+    private void add(final Jar jar) {
+        if (!jar.added.isEmpty() || !jar.removed.isEmpty() || !jar.changed.isEmpty()) {
+            synchronized (jars) {
+                jars.add(jar);
+            }
+        }
+    }
+
+    private static List<String> getJars(final Set<String> resources) {
+        final List<String> jars = new ArrayList<String>();
+        for (final String resource : resources) {
+            if (JarDiffUtils.isJar(resource)) {
+                jars.add(resource);
+            }
+        }
+        return jars;
+    }
+
+    private static void appendField(final StringBuilder builder, final String name, final String value) {
+        builder.append("      ");
+        appendString(builder, name).append(": ");
+        appendString(builder, value).append(",").append(LF);
+    }
+
+    private static StringBuilder appendEntries(final StringBuilder builder, final String name, final Set<String> entries) {
+        builder.append("      ");
+        appendString(builder, name).append(": [");
+        final Iterator<String> i = entries.iterator();
+        while (i.hasNext()) {
+            builder.append(LF).append("        ");
+            appendString(builder, i.next());
+            if (i.hasNext()) {
+                builder.append(",");
+            }
+        }
+        return builder.append(entries.isEmpty() ? "]" : LF + "      ]");
+    }
+
+    private static StringBuilder appendString(final StringBuilder builder, final String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * The changed entries of a jar.
+     */
+    static class Jar {
+
+        private final String layer;
+        private final String module;
+        private final String originalPath;
+        private final String path;
+        final Set<String> added = new TreeSet<String>();
+        final Set<String> removed = new TreeSet<String>();
+        final Set<String> changed = new TreeSet<String>();
+
+        Jar(final String layer, final String module, final String originalPath, final String path) {
+            this.layer = layer;
+            this.module = module;
+            this.originalPath = originalPath;
+            this.path = path;
+        }
+    }
+
+}
@@ -0,0 +1,431 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Digest used for hashing distribution content.
+ * <p/>
+ * The metadata hashes written to the patch.xml always use SHA-1. The comparison hashes are however only checked for
+ * equality, so they can use a faster non-cryptographic algorithm instead. The metadata hash is then only calculated
+ * for content which ends up in the patch.
+ *
+ * @author agent
+ */
+abstract class ContentDigest {
+
+    enum Algorithm {
+
+        SHA1("sha1") {
+            @Override
+            ContentDigest create() {
+                return new MessageContentDigest("SHA-1");
+            }
+        },
+        XXHASH64("xxhash64") {
+            @Override
+            ContentDigest create() {
+                return new XxHash64();
+            }
+        },
+        ;
+
+        private final String name;
+
+        Algorithm(String name) {
+            this.name = name;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        abstract ContentDigest create();
+
+        static Algorithm forName(final String name) {
+            for (final Algorithm algorithm : values()) {
+                if (algorithm.name.equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The algorithm used for the comparison hashes.
+     */
+    protected static volatile Algorithm comparison = Algorithm.SHA1;
+
+    abstract void update(byte[] b, int off, int len);
+
+    void update(final byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * Update the digest with the remaining bytes of the buffer, which is consumed.
+     *
+     * @param buffer the buffer
+     */
+    void update(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+        } else {
+            final byte[] b = FileHashUtils.getScratchBuffer();
+            while (buffer.hasRemaining()) {
+                final int l = Math.min(buffer.remaining(), b.length);
+                buffer.get(b, 0, l);
+                update(b, 0, l);
+            }
+        }
+    }
+
+    /**
+     * Complete the hash calculation and reset the digest.
+     *
+     * @return the hash
+     */
+    abstract byte[] digest();
+
+    abstract void reset();
+
+    /**
+     * Input stream feeding all bytes read to one or more digests, so that the raw content can be hashed while it is
+     * being parsed.
+     */
+    static class DigestInputStream extends FilterInputStream {
+
+        private final ContentDigest[] digests;
+
+        DigestInputStream(InputStream in, ContentDigest... digests) {
+            super(in);
+            this.digests = digests;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                final byte[] single = FileHashUtils.getScratchBuffer();
+                single[0] = (byte) b;
+                for (final ContentDigest digest : digests) {
+                    digest.update(single, 0, 1);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int l = super.read(b, off, len);
+            if (l > 0) {
+                for (final ContentDigest digest : digests) {
+                    digest.update(b, off, l);
+                }
+            }
+            return l;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            // Read instead of skipping, every byte has to be digested
+            final byte[] buf = FileHashUtils.getScratchBuffer();
+            long skipped = 0;
+            while (skipped < n) {
+                final int l = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (l == -1) {
+                    break;
+                }
+                skipped += l;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Read the remaining content, which was not consumed by the parser.
+         *
+         * @throws IOException
+         */
+        void drain() throws IOException {
+            final byte[] buf = FileHashUtils.getBuffer();
+            while (read(buf, 0, buf.length) != -1) {
+                //
+            }
+        }
+    }
+
+    /**
+     * Records the updates, to replay them into another digest later.
+     */
+    static class RecordingDigest extends ContentDigest {
+
+        private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            recorded.write(b, off, len);
+        }
+
+        @Override
+        byte[] digest() {
+            final byte[] bytes = recorded.toByteArray();
+            reset();
+            return bytes;
+        }
+
+        @Override
+        void reset() {
+            recorded.reset();
+        }
+    }
+
+    static class MessageContentDigest extends ContentDigest {
+
+        private final MessageDigest digest;
+
+        MessageContentDigest(String algorithm) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        void update(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+
+        @Override
+        void update(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        byte[] digest() {
+            return digest.digest();
+        }
+
+        @Override
+        void reset() {
+            digest.reset();
+        }
+    }
+
+    /**
+     * Streaming implementation of the 64 bit xxHash, with seed 0.
+     */
+    static class XxHash64 extends ContentDigest {
+
+        private static final long PRIME1 = 0x9E3779B185EBCA87L;
+        private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long PRIME3 = 0x165667B19E3779F9L;
+        private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+        private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+        private final byte[] buffer = new byte[32];
+        private int buffered;
+        private long length;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+
+        XxHash64() {
+            reset();
+        }
+
+        @Override
+        void reset() {
+            v1 = PRIME1 + PRIME2;
+            v2 = PRIME2;
+            v3 = 0;
+            v4 = -PRIME1;
+            buffered = 0;
+            length = 0;
+        }
+
+        @Override
+        void update(final byte[] b, int off, int len) {
+            length += len;
+            if (buffered > 0) {
+                final int fill = Math.min(32 - buffered, len);
+                System.arraycopy(b, off, buffer, buffered, fill);
+                buffered += fill;
+                off += fill;
+                len -= fill;
+                if (buffered < 32) {
+                    return;
+                }
+                stripe(buffer, 0);
+                buffered = 0;
+            }
+            while (len >= 32) {
+                stripe(b, off);
+                off += 32;
+                len -= 32;
+            }
+            if (len > 0) {
+                System.arraycopy(b, off, buffer, 0, len);
+                buffered = len;
+            }
+        }
+
+        @Override
+        void update(final ByteBuffer b) {
+            if (b.hasArray()) {
+                super.update(b);
+                return;
+            }
+            // Read the stripes directly from direct and memory mapped buffers
+            length += b.remaining();
+            if (buffered > 0) {
+                final int fill = Math.min(32 - buffered, b.remaining());
+                b.get(buffer, buffered, fill);
+                buffered += fill;
+                if (buffered < 32) {
+                    return;
+                }
+                stripe(buffer, 0);
+                buffered = 0;
+            }
+            final ByteOrder order = b.order();
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            int position = b.position();
+            final int limit = b.limit();
+            while (limit - position >= 32) {
+                v1 = round(v1, b.getLong(position));
+                v2 = round(v2, b.getLong(position + 8));
+                v3 = round(v3, b.getLong(position + 16));
+                v4 = round(v4, b.getLong(position + 24));
+                position += 32;
+            }
+            b.position(position);
+            b.order(order);
+            final int rest = b.remaining();
+            if (rest > 0) {
+                b.get(buffer, 0, rest);
+                buffered = rest;
+            }
+        }
+
+        private void stripe(final byte[] b, final int off) {
+            v1 = round(v1, getLong(b, off));
+            v2 = round(v2, getLong(b, off + 8));
+            v3 = round(v3, getLong(b, off + 16));
+            v4 = round(v4, getLong(b, off + 24));
+        }
+
+        @Override
+        byte[] digest() {
+            long hash;
+            if (length >= 32) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = merge(hash, v1);
+                hash = merge(hash, v2);
+                hash = merge(hash, v3);
+                hash = merge(hash, v4);
+            } else {
+                hash = v3 + PRIME5;
+            }
+            hash += length;
+
+            int i = 0;
+            for (; i + 8 <= buffered; i += 8) {
+                hash ^= round(0, getLong(buffer, i));
+                hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            }
+            if (i + 4 <= buffered) {
+                hash ^= (getInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+                hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+                i += 4;
+            }
+            for (; i < buffered; i++) {
+                hash ^= (buffer[i] & 0xFF) * PRIME5;
+                hash = Long.rotateLeft(hash, 11) * PRIME1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+
+            reset();
+            final byte[] result = new byte[8];
+            for (int j = 7; j >= 0; j--) {
+                result[j] = (byte) hash;
+                hash >>>= 8;
+            }
+            return result;
+        }
+
+        private static long round(long acc, final long input) {
+            acc += input * PRIME2;
+            acc = Long.rotateLeft(acc, 31);
+            return acc * PRIME1;
+        }
+
+        private static long merge(long hash, final long v) {
+            hash ^= round(0, v);
+            return hash * PRIME1 + PRIME4;
+        }
+
+        private static long getLong(final byte[] b, final int off) {
+            return (b[off] & 0xFFL)
+                    | (b[off + 1] & 0xFFL) << 8
+                    | (b[off + 2] & 0xFFL) << 16
+                    | (b[off + 3] & 0xFFL) << 24
+                    | (b[off + 4] & 0xFFL) << 32
+                    | (b[off + 5] & 0xFFL) << 40
+                    | (b[off + 6] & 0xFFL) << 48
+                    | (b[off + 7] & 0xFFL) << 56;
+        }
+
+        private static int getInt(final byte[] b, final int off) {
+            return (b[off] & 0xFF)
+                    | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16
+                    | (b[off + 3] & 0xFF) << 24;
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.as.patching.metadata.ContentItem;
+import org.jboss.as.patching.metadata.ContentType;
+import org.jboss.as.patching.metadata.MiscContentItem;
+import org.jboss.as.patching.metadata.ModuleItem;
+
+/**
+ * The content of a distribution which needs to be processed at all. Without {@code <generate-by-diff/>} only the
+ * {@code <specified-content>} can end up in the patch, so only the specified misc files, modules and bundles and the
+ * directories leading to them are walked and hashed, instead of filtering the results of processing everything.
+ * <p/>
+ * Specified misc directories are processed including all their content.
+ *
+ * @author agent
+ */
+class ContentScope {
+
+    private final Paths misc = new Paths();
+    private final Map<String, Layer> layers = new HashMap<String, Layer>();
+
+    private ContentScope() {
+        //
+    }
+
+    /**
+     * Create the scope for a patch config.
+     *
+     * @param config the patch config
+     * @return the scope, {@code null} if the whole distribution needs to be processed
+     */
+    static ContentScope create(final PatchConfig config) {
+        if (config.isGenerateByDiff()) {
+            return null;
+        }
+        final ContentScope scope = new ContentScope();
+        for (final ContentItem item : config.getSpecifiedContent()) {
+            if (item.getContentType() == ContentType.MISC) {
+                final MiscContentItem misc = (MiscContentItem) item;
+                final StringBuilder path = new StringBuilder();
+                for (final String element : misc.getPath()) {
+                    path.append(element).append('/');
+                }
+                scope.misc.add(path.append(misc.getName()).toString());
+            }
+        }
+        for (final PatchElementConfig element : config.getElements()) {
+            final Layer layer = new Layer();
+            for (final ContentItem item : element.getSpecifiedContent()) {
+                final ModuleItem module = (ModuleItem) item;
+                final String path = module.getName().replace('.', '/') + '/' + module.getSlot();
+                if (item.getContentType() == ContentType.BUNDLE) {
+                    layer.bundles.add(path);
+                } else {
+                    layer.modules.add(path);
+                }
+            }
+            scope.layers.put(element.getLayerName(), layer);
+        }
+        return scope;
+    }
+
+    /**
+     * Whether a misc item needs to be processed.
+     *
+     * @param item the item, relative to the distribution root
+     * @return {@code true} if the item is specified, within a specified directory or a directory leading to one
+     */
+    boolean includesMisc(final DistributionContentItem item) {
+        return misc.includes(item.getPath('/'));
+    }
+
+    /**
+     * Get the scope of a layer or add-on.
+     *
+     * @param name the layer or add-on name
+     * @return the layer scope, not processing anything if there is no config for the layer
+     */
+    Layer getLayer(final String name) {
+        final Layer layer = layers.get(name);
+        return layer == null ? new Layer() : layer;
+    }
+
+    static class Layer {
+
+        private final Paths modules = new Paths();
+        private final Paths bundles = new Paths();
+
+        /**
+         * Whether a module or bundle item, or a directory leading to it, needs to be processed.
+         *
+         * @param item   the item, relative to the layer directory
+         * @param bundle whether this is a bundle
+         * @return {@code true} if the item needs to be processed
+         */
+        boolean includes(final DistributionContentItem item, final boolean bundle) {
+            return (bundle ? bundles : modules).includes(item.getPath('/'));
+        }
+    }
+
+    /**
+     * A set of paths, including all their parent directories.
+     */
+    private static class Paths {
+
+        private final Set<String> paths = new HashSet<String>();
+        private final Set<String> parents = new HashSet<String>();
+
+        void add(final String path) {
+            paths.add(path);
+            for (int i = path.indexOf('/'); i > 0; i = path.indexOf('/', i + 1)) {
+                parents.add(path.substring(0, i));
+            }
+        }
+
+        boolean includes(final String path) {
+            if (paths.contains(path) || parents.contains(path)) {
+                return true;
+            }
+            for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+                if (paths.contains(path.substring(0, i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.as.patching.HashUtils;
+
+/**
+ * The cheap to obtain attributes of a file or directory, which are used to detect changes without hashing the content.
+ * For directories the attributes are aggregated over the whole tree: the total size of all files, the latest
+ * modification time and the number of entries. The file key of a directory is derived from the relative paths and
+ * file keys of all entries, so two directories with the same key contain the same physical files.
+ *
+ * @author agent
+ */
+class ContentStamp {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long size;
+    private final long lastModified;
+    private final long entries;
+    private final String fileKey;
+
+    ContentStamp(long size, long lastModified, long entries, String fileKey) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.entries = entries;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Create the stamp for a path.
+     *
+     * @param path       the path
+     * @param attributes the attributes of the path
+     * @return the stamp
+     * @throws IOException
+     */
+    static ContentStamp create(final Path path, final BasicFileAttributes attributes) throws IOException {
+        if (!attributes.isDirectory()) {
+            final Object key = attributes.fileKey();
+            return new ContentStamp(attributes.size(), attributes.lastModifiedTime().toMillis(), 0, key == null ? "" : key.toString());
+        }
+        final long[] totals = new long[] {0L, attributes.lastModifiedTime().toMillis(), 0L};
+        final ContentDigest keys = FileHashUtils.acquireDigest(ContentDigest.Algorithm.SHA1);
+        try {
+            final boolean complete = aggregate(path, "", totals, keys);
+            final String fileKey = complete ? "tree:" + HashUtils.bytesToHexString(keys.digest()) : "";
+            return new ContentStamp(totals[0], totals[1], totals[2], fileKey);
+        } finally {
+            FileHashUtils.releaseDigest(ContentDigest.Algorithm.SHA1, keys);
+        }
+    }
+
+    /**
+     * Aggregate the attributes of a directory tree, in name order.
+     *
+     * @return whether all entries have a file key
+     */
+    private static boolean aggregate(final Path dir, final String prefix, final long[] totals, final ContentDigest keys) throws IOException {
+        final Map<String, Path> sorted = new TreeMap<String, Path>();
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+        try {
+            for (final Path child : stream) {
+                sorted.put(child.getFileName().toString(), child);
+            }
+        } finally {
+            stream.close();
+        }
+        boolean complete = true;
+        for (final Map.Entry<String, Path> entry : sorted.entrySet()) {
+            final BasicFileAttributes attributes = DistributionProcessor.readAttributes(entry.getValue());
+            final String name = prefix + entry.getKey();
+            totals[1] = Math.max(totals[1], attributes.lastModifiedTime().toMillis());
+            totals[2]++;
+            keys.update(name.getBytes(UTF_8));
+            if (attributes.isDirectory()) {
+                keys.update(new byte[] { 0, 'd' });
+                complete &= aggregate(entry.getValue(), name + '/', totals, keys);
+            } else {
+                totals[0] += attributes.size();
+                final Object key = attributes.fileKey();
+                if (key == null) {
+                    complete = false;
+                } else {
+                    keys.update(new byte[] { 0, 'f' });
+                    keys.update(key.toString().getBytes(UTF_8));
+                }
+            }
+            keys.update(new byte[] { 0 });
+        }
+        return complete;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getEntries() {
+        return entries;
+    }
+
+    String getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final ContentStamp stamp = (ContentStamp) o;
+        return size == stamp.size && lastModified == stamp.lastModified && entries == stamp.entries && fileKey.equals(stamp.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (size ^ (size >>> 32));
+        result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+        result = 31 * result + (int) (entries ^ (entries >>> 32));
+        result = 31 * result + fileKey.hashCode();
+        return result;
+    }
+
+}
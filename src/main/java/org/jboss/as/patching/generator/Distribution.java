@@ -22,13 +22,24 @@
 
 package org.jboss.as.patching.generator;
 
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import javax.xml.stream.XMLStreamException;
 
 import org.jboss.as.patching.IoUtils;
 
@@ -38,7 +49,7 @@ import org.jboss.as.patching.IoUtils;
  *
  * @author Emanuel Muckenhuber
  */
-class Distribution {
+class Distribution implements Closeable {
 
     // The distribution root
     // Node to self: this cannot be static, because of the associated children
@@ -50,22 +61,103 @@ class Distribution {
 
     private String name;
     private String version;
+    private Byte comparisonMode;
+    private Path rootPath;
+    private FileSystem fileSystem;
 
     /**
      * Create and process the distribution right away.
      *
-     * @param file the distribution root
+     * @param file the distribution root, or a zip containing the distribution
      * @return the processed distribution
      * @throws IOException
      */
     public static Distribution create(final File file, final String... ignored) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return create(file, pool, ignored);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Create and process the distribution right away, using the given pool for scanning and hashing.
+     * <p/>
+     * A zipped distribution is read directly from the archive, which stays open until the distribution is
+     * {@link #close() closed}, since content hashes are computed lazily.
+     *
+     * @param file the distribution root, or a zip containing the distribution
+     * @param pool the fork join pool
+     * @return the processed distribution
+     * @throws IOException
+     */
+    public static Distribution create(final File file, final ForkJoinPool pool, final String... ignored) throws IOException {
+        return create(file, pool, null, ignored);
+    }
+
+    /**
+     * Create and process the distribution right away, using the given pool for scanning and the pipeline for hashing.
+     *
+     * @param file     the distribution root, or a zip containing the distribution
+     * @param pool     the fork join pool
+     * @param pipeline the hash pipeline, {@code null} to hash using the pool
+     * @return the processed distribution
+     * @throws IOException
+     */
+    public static Distribution create(final File file, final ForkJoinPool pool, final HashPipeline pipeline, final String... ignored) throws IOException {
+        return create(file, pool, pipeline, null, ignored);
+    }
+
+    /**
+     * Create and process the distribution right away, only processing the given scope.
+     *
+     * @param file     the distribution root, or a zip containing the distribution
+     * @param pool     the fork join pool
+     * @param pipeline the hash pipeline, {@code null} to hash using the pool
+     * @param scope    the content to process, {@code null} to process everything
+     * @return the processed distribution
+     * @throws IOException
+     */
+    static Distribution create(final File file, final ForkJoinPool pool, final HashPipeline pipeline, final ContentScope scope,
+                               final String... ignored) throws IOException {
+        return create(file, pool, pipeline, scope, false, ignored);
+    }
+
+    /**
+     * Create and process the distribution right away, for writing a snapshot. All comparison and metadata hashes are
+     * calculated on the pool while processing, rather than one by one when writing the snapshot.
+     *
+     * @param file     the distribution root, or a zip containing the distribution
+     * @param pool     the fork join pool
+     * @param pipeline the hash pipeline, {@code null} to hash using the pool
+     * @return the processed distribution
+     * @throws IOException
+     */
+    static Distribution createSnapshot(final File file, final ForkJoinPool pool, final HashPipeline pipeline) throws IOException {
+        return create(file, pool, pipeline, null, true);
+    }
+
+    private static Distribution create(final File file, final ForkJoinPool pool, final HashPipeline pipeline, final ContentScope scope,
+                                       final boolean allHashes, final String... ignored) throws IOException {
         final Distribution distribution = new Distribution();
         if (ignored != null) {
             for (String ignore : ignored) {
                 distribution.structure.registerIgnoredPath(ignore);
             }
         }
-        DistributionProcessor.process(distribution.ROOT, file, distribution);
+        if (DistributionArchive.isArchive(file)) {
+            distribution.fileSystem = DistributionArchive.open(file);
+            distribution.rootPath = DistributionArchive.getDistributionRoot(distribution.fileSystem);
+        } else {
+            distribution.rootPath = file.toPath();
+        }
+        try {
+            DistributionProcessor.process(distribution.ROOT, distribution.rootPath, distribution, pool, pipeline, scope, allHashes);
+        } catch (IOException | RuntimeException e) {
+            distribution.close();
+            throw e;
+        }
         return distribution;
     }
 
@@ -82,6 +174,145 @@ class Distribution {
         return ROOT;
     }
 
+    /**
+     * Whether the file is a distribution snapshot, written by {@link #writeSnapshot(File)}.
+     *
+     * @param file the file
+     * @return {@code true} if this is a snapshot
+     */
+    static boolean isSnapshot(final File file) {
+        return isXmlSnapshot(file) || DistributionSnapshot.isBinarySnapshot(file);
+    }
+
+    private static boolean isXmlSnapshot(final File file) {
+        return file.isFile() && file.getName().endsWith(".xml");
+    }
+
+    /**
+     * Load a distribution snapshot, rather than processing the distribution again. Snapshots only provide the metadata,
+     * so they can be used as comparison base but not as updated distribution.
+     *
+     * @param file    the snapshot
+     * @param ignored additionally ignored paths
+     * @return the distribution
+     * @throws IOException
+     */
+    static Distribution load(final File file, final String... ignored) throws IOException {
+        final Distribution distribution = readSnapshot(file);
+        if (distribution.getName() == null || distribution.getVersion() == null) {
+            throw processingError("distribution snapshot %s does not contain the name and version", file);
+        }
+        if (distribution.comparisonMode == null || distribution.comparisonMode != JarDiffUtils.getComparisonMode()) {
+            throw processingError("distribution snapshot %s was created with different comparison settings (--detailed-inspection, --comparison-digest or the <jar-comparison> of the patch config)", file);
+        }
+        if (ignored != null && ignored.length > 0) {
+            // Snapshots contain everything, apply the ignored paths now
+            for (String ignore : ignored) {
+                distribution.structure.registerIgnoredPath(ignore);
+            }
+            for (final ProcessedLayer layer : distribution.layers.values()) {
+                distribution.removeIgnored(layer);
+            }
+            for (final ProcessedLayer addOn : distribution.addOns.values()) {
+                distribution.removeIgnored(addOn);
+            }
+            distribution.removeIgnored(distribution.ROOT);
+        }
+        return distribution;
+    }
+
+    /**
+     * Read a distribution snapshot as is, in either the xml or the binary format.
+     *
+     * @param file the snapshot
+     * @return the distribution
+     * @throws IOException
+     */
+    static Distribution readSnapshot(final File file) throws IOException {
+        if (!isXmlSnapshot(file)) {
+            return DistributionSnapshot.read(file);
+        }
+        try {
+            return DistributionXml.parse(file);
+        } catch (XMLStreamException e) {
+            throw processingError(e, "failed to parse distribution snapshot %s", file);
+        }
+    }
+
+    /**
+     * Write a snapshot of this distribution, which can be {@link #load(File, String...) loaded} instead of processing
+     * the distribution again. Files ending with {@code .xml} are written in the xml format, all others in the compact
+     * binary format.
+     *
+     * @param file the target file
+     * @throws IOException
+     */
+    void writeSnapshot(final File file) throws IOException {
+        if (!file.getName().endsWith(".xml")) {
+            DistributionSnapshot.write(file, this);
+            return;
+        }
+        final OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            DistributionXml.marshal(os, this);
+        } catch (XMLStreamException e) {
+            throw processingError(e, "failed to write distribution snapshot %s", file);
+        } finally {
+            IoUtils.safeClose(os);
+        }
+    }
+
+    private void removeIgnored(final ProcessedLayer layer) {
+        removeIgnored(layer.getModules());
+        removeIgnored(layer.getBundles());
+    }
+
+    private void removeIgnored(final Set<DistributionModuleItem> items) {
+        final Iterator<DistributionModuleItem> i = items.iterator();
+        while (i.hasNext()) {
+            final DistributionModuleItem item = i.next();
+            // Same path as the module directory relative to the layer root, when processing the distribution
+            final String path = item.getName().replace('.', DistributionContentItem.PATH_DELIMITER) + DistributionContentItem.PATH_DELIMITER + item.getSlot();
+            if (isIgnored(DistributionStructureImpl.createMiscItem(null, path))) {
+                i.remove();
+            }
+        }
+    }
+
+    private void removeIgnored(final DistributionContentItem parent) {
+        final Iterator<DistributionContentItem> i = parent.getChildren().iterator();
+        while (i.hasNext()) {
+            final DistributionContentItem item = i.next();
+            if (isIgnored(item)) {
+                i.remove();
+            } else {
+                removeIgnored(item);
+            }
+        }
+    }
+
+    /**
+     * Get the comparison mode of the hashes, which is the current mode for processed distributions.
+     *
+     * @return the comparison mode
+     */
+    byte getComparisonMode() {
+        return comparisonMode == null ? JarDiffUtils.getComparisonMode() : comparisonMode;
+    }
+
+    void setComparisonMode(Byte comparisonMode) {
+        this.comparisonMode = comparisonMode;
+    }
+
+    /**
+     * Get the path of the distribution root, which is within the archive for zipped distributions.
+     *
+     * @return the root path, {@code null} if this distribution was not created from the file system
+     */
+    Path getRootPath() {
+        return rootPath;
+    }
+
     /**
      * Get the distribution name.
      *
@@ -147,6 +378,14 @@ class Distribution {
         return addOns.get(name);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (fileSystem != null) {
+            fileSystem.close();
+            fileSystem = null;
+        }
+    }
+
     public boolean isIgnored(final DistributionContentItem item) {
         return structure.isIgnored(item);
     }
@@ -221,25 +460,7 @@ class Distribution {
         }
 
         /**
-         * Add a bundle.
-         *
-         * @param item the content item
-         */
-        protected void addBundle(DistributionContentItem item) {
-            bundles.add(createDistributionModuleItem(item));
-        }
-
-        /**
-         * Add a module.
-         *
-         * @param item the content item
-         */
-        protected void addModule(final DistributionContentItem item) {
-            modules.add(createDistributionModuleItem(item));
-        }
-
-        /**
-         * Transform a content item to a module item.
+         * Transform a content item to a module item. This is called concurrently for all modules of a layer.
          *
          * @param item the content item
          * @return the module item
@@ -247,9 +468,7 @@ class Distribution {
         protected DistributionModuleItem createDistributionModuleItem(final DistributionContentItem item) {
             final String moduleName = item.getParent().getPath('.');
             final String slot = item.getName();
-            final byte[] metadata = item.getMetadataHash();
-            final byte[] comparison = item.getComparisonHash();
-            return new DistributionModuleItem(moduleName, slot, comparison, metadata);
+            return new DistributionModuleItem(moduleName, slot, item);
         }
 
     }
@@ -0,0 +1,297 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.jboss.as.patching.installation.LayersConfig;
+
+/**
+ * Support for distributions, which are read directly from a zip archive rather than an exploded directory.
+ *
+ * The content is accessed through a zip {@link FileSystem}. Only the parts which have to be handed over to
+ * {@code java.io.File} based APIs ({@code LayersConfig} and the module loader resolving the product name and version)
+ * are copied to a temporary directory, all other content is read from the archive.
+ *
+ * @author agent
+ */
+class DistributionArchive {
+
+    static final String PRODUCT_CONF = "bin/product.conf";
+    static final String LAYERS_CONF = "layers.conf";
+
+    private DistributionArchive() {
+        //
+    }
+
+    /**
+     * Whether the file is a distribution archive, rather than an exploded distribution.
+     *
+     * @param file the file
+     * @return {@code true} if this is an archive
+     */
+    static boolean isArchive(final File file) {
+        return file.isFile();
+    }
+
+    /**
+     * Open the zip file system for a distribution archive.
+     *
+     * @param file the archive
+     * @return the file system
+     * @throws IOException
+     */
+    static FileSystem open(final File file) throws IOException {
+        return FileSystems.newFileSystem(file.toPath(), (ClassLoader) null);
+    }
+
+    /**
+     * Get the distribution root within the archive. Product zips usually contain a single top level directory,
+     * which is used as distribution root.
+     *
+     * @param fileSystem the archive file system
+     * @return the distribution root
+     * @throws IOException
+     */
+    static Path getDistributionRoot(final FileSystem fileSystem) throws IOException {
+        final Path root = fileSystem.getRootDirectories().iterator().next();
+        Path single = null;
+        int count = 0;
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(root);
+        try {
+            for (final Path child : stream) {
+                count++;
+                single = child;
+            }
+        } finally {
+            stream.close();
+        }
+        if (count == 1 && Files.isDirectory(single)) {
+            return single;
+        }
+        return root;
+    }
+
+    /**
+     * Whether the path is on the default file system and can be used with {@code java.io.File}.
+     *
+     * @param path the path
+     * @return {@code true} if it is a local path
+     */
+    static boolean isLocal(final Path path) {
+        return path.getFileSystem() == FileSystems.getDefault();
+    }
+
+    /**
+     * Get the layers configuration for a module or bundle root.
+     *
+     * @param root the root
+     * @return the layers config
+     * @throws IOException
+     */
+    static LayersConfig getLayersConfig(final Path root) throws IOException {
+        if (isLocal(root)) {
+            return LayersConfig.getLayersConfig(root.toFile());
+        }
+        final Path tmp = Files.createTempDirectory("patch-gen-layers");
+        try {
+            final Path layersConf = root.resolve(LAYERS_CONF);
+            if (Files.isRegularFile(layersConf)) {
+                Files.copy(layersConf, tmp.resolve(LAYERS_CONF));
+            }
+            return LayersConfig.getLayersConfig(tmp.toFile());
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    /**
+     * Copy the parts of an archived distribution needed to resolve the product name and version: the product.conf
+     * and the {@code org.jboss.as.version} and product modules, including their dependencies.
+     *
+     * @param distributionRoot the distribution root within the archive
+     * @param moduleRoots      the module roots within the archive
+     * @param target           the target directory
+     * @param localModuleRoots the module roots in the target directory
+     * @throws IOException
+     */
+    static void extractIdentity(final Path distributionRoot, final Set<Path> moduleRoots, final Path target, final List<File> localModuleRoots) throws IOException {
+        final Path productConf = distributionRoot.resolve(PRODUCT_CONF);
+        final Deque<String> modules = new ArrayDeque<String>();
+        modules.add("org.jboss.as.version:main");
+        if (Files.isRegularFile(productConf)) {
+            copy(productConf, target.resolve(PRODUCT_CONF));
+            final InputStream is = Files.newInputStream(productConf);
+            try {
+                final Properties properties = new Properties();
+                properties.load(is);
+                final String slot = properties.getProperty("slot");
+                if (slot != null) {
+                    modules.add("org.jboss.as.product:" + slot.trim());
+                }
+            } finally {
+                is.close();
+            }
+        }
+        for (final Path moduleRoot : moduleRoots) {
+            localModuleRoots.add(target.resolve(distributionRoot.relativize(moduleRoot).toString()).toFile());
+        }
+        // Copy the modules and their dependencies, using the first module root providing a module
+        final Set<String> processed = new HashSet<String>();
+        while (!modules.isEmpty()) {
+            final String module = modules.poll();
+            if (!processed.add(module)) {
+                continue;
+            }
+            final int i = module.indexOf(':');
+            final String path = module.substring(0, i).replace('.', '/') + "/" + module.substring(i + 1);
+            for (final Path moduleRoot : moduleRoots) {
+                final Path moduleDir = moduleRoot.resolve(path);
+                if (Files.isRegularFile(moduleDir.resolve("module.xml"))) {
+                    copy(moduleDir, target.resolve(distributionRoot.relativize(moduleDir).toString()));
+                    modules.addAll(getDependencies(moduleDir.resolve("module.xml")));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the module dependencies declared in a module.xml.
+     *
+     * @param moduleXml the module.xml
+     * @return the dependencies as {@code name:slot}
+     * @throws IOException
+     */
+    static Set<String> getDependencies(final Path moduleXml) throws IOException {
+        final Set<String> dependencies = new HashSet<String>();
+        final InputStream is = Files.newInputStream(moduleXml);
+        try {
+            final XMLStreamReader reader = ModuleDiffUtils.INPUT_FACTORY.get().createXMLStreamReader(is);
+            boolean inDependencies = false;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    final String localName = reader.getLocalName();
+                    if ("dependencies".equals(localName)) {
+                        inDependencies = true;
+                    } else if (inDependencies && "module".equals(localName)) {
+                        final String name = reader.getAttributeValue(null, "name");
+                        final String slot = reader.getAttributeValue(null, "slot");
+                        if (name != null) {
+                            dependencies.add(name + ":" + (slot == null ? "main" : slot));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "dependencies".equals(reader.getLocalName())) {
+                    inDependencies = false;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("failed to parse " + moduleXml, e);
+        } finally {
+            is.close();
+        }
+        return dependencies;
+    }
+
+    /**
+     * Recursively copy a file or directory, the source and target can be on different file systems.
+     *
+     * @param source the source
+     * @param target the target
+     * @throws IOException
+     */
+    static void copy(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(resolve(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                final Path copy = resolve(file);
+                Files.createDirectories(copy.getParent());
+                Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private Path resolve(final Path path) {
+                if (path.equals(source)) {
+                    return target;
+                }
+                // Resolve by name, the paths may belong to different providers
+                Path result = target;
+                for (final Path element : source.relativize(path)) {
+                    result = result.resolve(element.toString());
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Recursively delete a local directory.
+     *
+     * @param path the path
+     * @throws IOException
+     */
+    static void delete(final Path path) throws IOException {
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -23,6 +23,7 @@
 package org.jboss.as.patching.generator;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -42,8 +43,11 @@ abstract class DistributionContentItem implements Comparable<DistributionContent
     static final char PATH_DELIMITER = '/';
     static final Set<DistributionContentItem> NO_CHILDREN = Collections.emptySet();
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     protected final DistributionContentItem parent;
     protected final String name;
+    private volatile byte[] treeHash;
 
     protected DistributionContentItem(final DistributionContentItem parent, final String name) {
         this.parent = parent;
@@ -64,6 +68,86 @@ abstract class DistributionContentItem implements Comparable<DistributionContent
      */
     public abstract byte[] getComparisonHash();
 
+    /**
+     * Pre-populate the hashes, e.g. from an external cache, so that they don't have to be calculated. Hashes which are
+     * known already are kept.
+     *
+     * @param comparisonHash the comparison hash for the current comparison mode, can be {@code null}
+     * @param metadataHash   the metadata hash, can be {@code null}
+     */
+    void populateHashes(final byte[] comparisonHash, final byte[] metadataHash) {
+        // The hashes are fixed unless they are calculated lazily
+    }
+
+    /**
+     * Get the hash of the subtree starting at this item. For leaves this is the comparison hash, or the metadata hash
+     * if the comparison normalizes the content. Directories digest the name, type and tree hash of their children in
+     * name order. Two directories with the same tree hash therefore have identical content, as far as the comparison is
+     * concerned.
+     *
+     * @return the tree hash
+     */
+    public byte[] getTreeHash() {
+        byte[] hash = treeHash;
+        if (hash == null) {
+            if (isLeaf()) {
+                // Normalized comparison hashes are expensive, equal raw content is enough to skip a subtree
+                hash = JarDiffUtils.isRawLeafComparison(getName()) ? getComparisonHash() : getMetadataHash();
+            } else {
+                hash = calculateTreeHash(getChildren());
+            }
+            treeHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Get the hash of the subtree starting at this item, but only if all content of the subtree is hashed already.
+     *
+     * @return the tree hash, {@code null} if it would require hashing any content
+     */
+    byte[] getKnownTreeHash() {
+        if (treeHash == null) {
+            if (isLeaf()) {
+                if (!isHashed(JarDiffUtils.isRawLeafComparison(getName()))) {
+                    return null;
+                }
+            } else {
+                for (final DistributionContentItem child : getChildren()) {
+                    if (child.getKnownTreeHash() == null) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return getTreeHash();
+    }
+
+    /**
+     * Check whether a hash of this item is known, without calculating it.
+     *
+     * @param comparison {@code true} for the comparison hash, {@code false} for the metadata hash
+     * @return whether the hash is known
+     */
+    boolean isHashed(final boolean comparison) {
+        return true;
+    }
+
+    private static byte[] calculateTreeHash(final Collection<DistributionContentItem> children) {
+        final ContentDigest digest = FileHashUtils.acquireDigest(ContentDigest.Algorithm.SHA1);
+        try {
+            for (final DistributionContentItem child : children) {
+                final byte[] hash = child.getTreeHash();
+                digest.update(child.getName().getBytes(UTF_8));
+                digest.update(new byte[] { 0, (byte) (child.isLeaf() ? 'f' : 'd') });
+                digest.update(hash);
+            }
+            return digest.digest();
+        } finally {
+            FileHashUtils.releaseDigest(ContentDigest.Algorithm.SHA1, digest);
+        }
+    }
+
     /**
      * See whether this item is a leaf in the tree.
      *
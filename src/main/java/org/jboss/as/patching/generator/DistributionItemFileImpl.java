@@ -24,67 +24,293 @@ package org.jboss.as.patching.generator;
 
 import static org.jboss.as.patching.generator.PatchGenerator.processingError;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Set;
 import java.util.TreeSet;
 
-import org.jboss.as.patching.HashUtils;
-
 /**
- * File based content item implementation.
+ * File based content item implementation. The file attributes are read once when listing the parent directory and
+ * kept with the item, to avoid further file system round trips.
  *
  * @author Emanuel Muckenhuber
  */
 class DistributionItemFileImpl extends DistributionContentItem {
 
-    private final File file;
+    private final Path path;
+    private final BasicFileAttributes attributes;
     private final Set<DistributionContentItem> children;
-    private byte[] cachedMetadataHash = null;
+    // Memoized hashes, calculated at most once even if requested concurrently
+    private final Object metadataLock = new Object();
+    private final Object comparisonLock = new Object();
+    private volatile byte[] cachedMetadataHash = null;
+    private volatile byte[] cachedComparisonHash = null;
+    private HashCache.Entry cacheEntry;
+    private volatile ContentStamp stamp;
+    private volatile DistributionItemFileImpl canonical;
+    private volatile ModuleDiffUtils.ModuleXml moduleXml;
 
-    protected DistributionItemFileImpl(File file, DistributionContentItem parent) {
-        this(file, parent, file.getName());
+    protected DistributionItemFileImpl(Path path, BasicFileAttributes attributes, DistributionContentItem parent) {
+        this(path, attributes, parent, path.getFileName().toString());
     }
 
-    protected DistributionItemFileImpl(File file, DistributionContentItem parent, String name) {
+    protected DistributionItemFileImpl(Path path, BasicFileAttributes attributes, DistributionContentItem parent, String name) {
         super(parent, name);
-        this.file = file;
-        if (file.isDirectory()) {
+        this.path = path;
+        this.attributes = attributes;
+        if (attributes.isDirectory()) {
             children = new TreeSet<DistributionContentItem>();
         } else {
             children = NO_CHILDREN;
         }
     }
 
-    @Override
-    public String getName() {
-        return file.getName();
+    /**
+     * Get the file system path of this item.
+     *
+     * @return the path
+     */
+    Path getFileSystemPath() {
+        return path;
+    }
+
+    /**
+     * Get the file attributes, as read when processing the distribution.
+     *
+     * @return the attributes
+     */
+    BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Get the content stamp, aggregated over the whole tree for directories.
+     *
+     * @return the stamp
+     * @throws IOException
+     */
+    ContentStamp getStamp() throws IOException {
+        ContentStamp stamp = this.stamp;
+        if (stamp == null) {
+            stamp = ContentStamp.create(path, attributes);
+            this.stamp = stamp;
+        }
+        return stamp;
+    }
+
+    /**
+     * Get the item which is hashed for the same physical file, if the {@link FileKeyIndex} is enabled.
+     *
+     * @return the canonical item, this item if it is hashed itself
+     */
+    DistributionItemFileImpl getCanonical() {
+        DistributionItemFileImpl canonical = this.canonical;
+        if (canonical == null) {
+            final FileKeyIndex index = FileKeyIndex.current;
+            canonical = index == null ? this : index.getCanonical(this);
+            this.canonical = canonical;
+        }
+        return canonical;
+    }
+
+    /**
+     * Get the parsed module.xml of a module directory, parsed once for the physical file.
+     *
+     * @return the parsed module.xml
+     * @throws IOException
+     */
+    ModuleDiffUtils.ModuleXml getModuleXml() throws IOException {
+        final DistributionItemFileImpl canonical = getCanonical();
+        if (canonical != this) {
+            return canonical.getModuleXml();
+        }
+        ModuleDiffUtils.ModuleXml moduleXml = this.moduleXml;
+        if (moduleXml == null) {
+            moduleXml = ModuleDiffUtils.parseModuleXml(path.resolve("module.xml"));
+            this.moduleXml = moduleXml;
+        }
+        return moduleXml;
+    }
+
+    boolean isDirectory() {
+        return attributes.isDirectory();
     }
 
     @Override
     public byte[] getMetadataHash() {
+        byte[] hash = cachedMetadataHash;
+        if (hash == null) {
+            synchronized (metadataLock) {
+                hash = cachedMetadataHash;
+                if (hash == null) {
+                    hash = calculateMetadataHash();
+                    cachedMetadataHash = hash;
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public byte[] getComparisonHash() {
+        byte[] hash = cachedComparisonHash;
+        if (hash == null) {
+            synchronized (comparisonLock) {
+                hash = cachedComparisonHash;
+                if (hash == null) {
+                    hash = calculateComparisonHash();
+                    cachedComparisonHash = hash;
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    void populateHashes(final byte[] comparisonHash, final byte[] metadataHash) {
+        if (comparisonHash != null) {
+            synchronized (comparisonLock) {
+                if (cachedComparisonHash == null) {
+                    cachedComparisonHash = comparisonHash;
+                }
+            }
+        }
+        if (metadataHash != null) {
+            synchronized (metadataLock) {
+                if (cachedMetadataHash == null) {
+                    cachedMetadataHash = metadataHash;
+                }
+            }
+        }
+    }
+
+    @Override
+    boolean isHashed(final boolean comparison) {
+        if ((comparison ? cachedComparisonHash : cachedMetadataHash) != null) {
+            return true;
+        }
+        // Shared with the same physical file, see the calculation of the hashes
+        final DistributionItemFileImpl canonical = this.canonical;
+        return canonical != null && canonical != this && (!comparison || canonical.getName().equals(getName()))
+                && canonical.isHashed(comparison);
+    }
+
+    /**
+     * Populate the hashes from the hash cache, if enabled, so that only missing hashes need to be calculated.
+     *
+     * @param comparison whether the comparison hash is needed
+     * @param metadata   whether the metadata hash is needed
+     * @return {@code true} if all needed hashes are known now
+     */
+    boolean populateFromCache(final boolean comparison, final boolean metadata) {
+        final HashCache cache = HashCache.current;
+        if (cache != null) {
+            try {
+                final HashCache.Entry entry = getCacheEntry(cache);
+                populateHashes(comparison && cachedComparisonHash == null ? cache.getComparisonHash(entry, JarDiffUtils.getComparisonMode()) : null,
+                        metadata && cachedMetadataHash == null ? cache.getMetadataHash(entry) : null);
+            } catch (IOException e) {
+                throw processingError(e, "failed to generate hash");
+            }
+        }
+        return (!comparison || cachedComparisonHash != null) && (!metadata || cachedMetadataHash != null);
+    }
+
+    /**
+     * Populate hashes calculated elsewhere, also storing them in the hash cache.
+     *
+     * @param comparisonHash the comparison hash, can be {@code null}
+     * @param metadataHash   the metadata hash, can be {@code null}
+     */
+    void completeHashes(final byte[] comparisonHash, final byte[] metadataHash) {
+        populateHashes(comparisonHash, metadataHash);
+        final HashCache cache = HashCache.current;
+        if (cache != null) {
+            try {
+                final HashCache.Entry entry = getCacheEntry(cache);
+                if (comparisonHash != null) {
+                    entry.setComparisonHash(JarDiffUtils.getComparisonMode(), comparisonHash);
+                }
+                if (metadataHash != null) {
+                    entry.setMetadataHash(metadataHash);
+                }
+            } catch (IOException e) {
+                throw processingError(e, "failed to generate hash");
+            }
+        }
+    }
+
+    private byte[] calculateMetadataHash() {
+        final DistributionItemFileImpl canonical = getCanonical();
+        if (canonical != this) {
+            return canonical.getMetadataHash();
+        }
         try {
-            if (cachedMetadataHash == null) {
-                cachedMetadataHash = HashUtils.hashFile(file);
+            final HashCache cache = HashCache.current;
+            if (cache == null) {
+                return FileHashUtils.hashFile(path, attributes);
+            }
+            final HashCache.Entry entry = getCacheEntry(cache);
+            byte[] hash = cache.getMetadataHash(entry);
+            if (hash == null) {
+                hash = FileHashUtils.hashFile(path, attributes);
+                entry.setMetadataHash(hash);
             }
-            return cachedMetadataHash;
+            return hash;
         } catch (IOException e) {
             throw processingError(e, "failed to generate hash");
         }
     }
 
-    @Override
-    public byte[] getComparisonHash() {
+    private byte[] calculateComparisonHash() {
+        final DistributionItemFileImpl canonical = getCanonical();
+        // The comparison depends on the name as well, e.g. for jars
+        if (canonical != this && canonical.getName().equals(getName())) {
+            return canonical.getComparisonHash();
+        }
         try {
-            return JarDiffUtils.calculateHash(file, this);
+            final HashCache cache = HashCache.current;
+            if (cache == null) {
+                return calculateHashes(null);
+            }
+            final byte mode = JarDiffUtils.getComparisonMode();
+            final HashCache.Entry entry = getCacheEntry(cache);
+            byte[] hash = cache.getComparisonHash(entry, mode);
+            if (hash == null) {
+                hash = calculateHashes(entry);
+                entry.setComparisonHash(mode, hash);
+            }
+            return hash;
         } catch (Exception e) {
             throw processingError(e, "failed to generate hash");
         }
     }
 
+    /**
+     * Calculate the comparison hash, keeping the metadata hash if it was calculated from the same read.
+     */
+    private byte[] calculateHashes(final HashCache.Entry entry) throws Exception {
+        final byte[][] hashes = JarDiffUtils.calculateHashes(path, this, cachedMetadataHash == null);
+        if (hashes[1] != null) {
+            populateHashes(null, hashes[1]);
+            if (entry != null) {
+                entry.setMetadataHash(hashes[1]);
+            }
+        }
+        return hashes[0];
+    }
+
+    private synchronized HashCache.Entry getCacheEntry(final HashCache cache) throws IOException {
+        if (cacheEntry == null) {
+            cacheEntry = cache.getEntry(path, getStamp());
+        }
+        return cacheEntry;
+    }
+
     @Override
     public boolean isLeaf() {
-        return file.isFile();
+        return attributes.isRegularFile();
     }
 
     @Override
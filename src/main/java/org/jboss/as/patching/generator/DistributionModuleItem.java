@@ -31,12 +31,29 @@ class DistributionModuleItem implements Comparable<DistributionModuleItem> {
     private final String slot;
     private final byte[] comparisonHash;
     private final byte[] metadataHash;
+    private final DistributionContentItem item;
 
     DistributionModuleItem(String moduleName, String slot, byte[] comparisonHash, byte[] metadataHash) {
         this.moduleName = moduleName;
         this.slot = slot;
         this.metadataHash = metadataHash;
         this.comparisonHash = comparisonHash;
+        this.item = null;
+    }
+
+    /**
+     * Create a module item, which calculates the hashes of the module directory only when needed.
+     *
+     * @param moduleName the module name
+     * @param slot       the slot
+     * @param item       the module directory
+     */
+    DistributionModuleItem(String moduleName, String slot, DistributionContentItem item) {
+        this.moduleName = moduleName;
+        this.slot = slot;
+        this.metadataHash = null;
+        this.comparisonHash = null;
+        this.item = item;
     }
 
     String getName() {
@@ -48,11 +65,33 @@ class DistributionModuleItem implements Comparable<DistributionModuleItem> {
     }
 
     byte[] getMetadataHash() {
-        return metadataHash;
+        return item == null ? metadataHash : item.getMetadataHash();
     }
 
     byte[] getComparisonHash() {
-        return comparisonHash;
+        return item == null ? comparisonHash : item.getComparisonHash();
+    }
+
+    /**
+     * Pre-populate the hashes of the module directory, if they are calculated lazily.
+     *
+     * @param comparisonHash the comparison hash for the current comparison mode, can be {@code null}
+     * @param metadataHash   the metadata hash, can be {@code null}
+     * @see DistributionContentItem#populateHashes(byte[], byte[])
+     */
+    void populateHashes(final byte[] comparisonHash, final byte[] metadataHash) {
+        if (item != null) {
+            item.populateHashes(comparisonHash, metadataHash);
+        }
+    }
+
+    /**
+     * Get the module directory, if the hashes are calculated lazily.
+     *
+     * @return the module directory, {@code null} otherwise
+     */
+    DistributionContentItem getContentItem() {
+        return item;
     }
 
     String getFullModuleName() {
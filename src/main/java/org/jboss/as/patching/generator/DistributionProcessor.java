@@ -19,23 +19,34 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
-
 package org.jboss.as.patching.generator;
 
 import static org.jboss.as.patching.generator.PatchGenerator.processingError;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import org.jboss.as.patching.installation.LayersConfig;
 import org.jboss.modules.LocalModuleLoader;
@@ -46,45 +57,132 @@ import org.jboss.modules.ModuleLoader;
 /**
  * Utility class for processing a distribution.
  *
+ * The misc file tree is walked first, forking a task for every directory. Module and bundle roots found on the way
+ * are only recorded, and processed once the misc tree is complete, forking a task per layer and add-on. Every task
+ * only modifies the content items it created itself, the results are merged by the parent task after joining, which
+ * keeps the resulting tree the same regardless of the number of threads.
+ *
+ * Directories are listed once using a {@link DirectoryStream}, reading the {@link BasicFileAttributes} of every entry
+ * only once. The attributes are kept on the {@link DistributionItemFileImpl}, so deciding whether an entry is a
+ * directory, a module or bundle does not need any further file system access.
+ *
  * @author Emanuel Muckenhuber
  */
 class DistributionProcessor {
 
-    private Set<DistributionContentItem> moduleRoots = new LinkedHashSet<DistributionContentItem>();
+    private final Distribution distribution;
+    private final Path distributionRoot;
+    private final HashPipeline.Batch batch;
+    private final ContentScope scope;
+    private final PrefilterPairing pairing;
+    private final Queue<DistributionItemFileImpl> incomplete;
+    private final Set<Path> moduleRoots = new LinkedHashSet<Path>();
 
     // Maybe fail if we find an overlay directory
-    private final FilenameFilter OVERLAYS_FILTER = new FilenameFilter() {
+    private static final DirectoryStream.Filter<Path> OVERLAYS_FILTER = new DirectoryStream.Filter<Path>() {
         @Override
-        public boolean accept(File dir, String name) {
-            return !name.equals(".overlays");
+        public boolean accept(Path entry) {
+            return !entry.getFileName().toString().equals(".overlays");
         }
     };
 
+    private DistributionProcessor(final Distribution distribution, final Path distributionRoot, final HashPipeline pipeline,
+                                  final ContentScope scope, final PrefilterPairing pairing, final boolean allHashes) {
+        this.distribution = distribution;
+        this.distributionRoot = distributionRoot;
+        this.batch = pipeline == null ? null : pipeline.newBatch();
+        this.scope = scope;
+        this.pairing = pairing;
+        this.incomplete = allHashes ? new ConcurrentLinkedQueue<DistributionItemFileImpl>() : null;
+    }
+
     /**
      * Process a distribution root.
      *
      * @param parent           the misc root
      * @param distributionRoot the distribution root
      * @param distribution     the distribution
+     * @param pool             the pool used for scanning and hashing
+     * @param pipeline         the pipeline used for hashing, {@code null} to hash within the scanning tasks
+     * @param scope            the content to process, {@code null} to process everything
+     * @param allHashes        whether to calculate both the comparison and metadata hashes of all items
      * @throws IOException
      */
-    static void process(final DistributionContentItem parent, final File distributionRoot, Distribution distribution) throws IOException {
-        final DistributionProcessor processor = new DistributionProcessor();
-        final File[] children = distributionRoot.listFiles();
-        if (children != null && children.length != 0) {
-            for (final File child : children) {
-                processor.processMisc(parent, child, distribution);
+    static void process(final DistributionContentItem parent, final Path distributionRoot, final Distribution distribution,
+                        final ForkJoinPool pool, final HashPipeline pipeline, final ContentScope scope, final boolean allHashes) throws IOException {
+        final Set<Path> moduleRoots = processContent(parent, distributionRoot, distribution, pool, pipeline, scope, allHashes);
+
+        // Update name and version
+        if (DistributionArchive.isLocal(distributionRoot)) {
+            final List<File> mp = new ArrayList<File>();
+            for (final Path moduleRoot : moduleRoots) {
+                mp.add(moduleRoot.toFile());
+            }
+            resolveIdentity(distributionRoot.toFile(), mp, distribution);
+        } else {
+            // Copy the required modules out of the archive, for the module loader
+            final Path tmp = Files.createTempDirectory("patch-gen-identity");
+            try {
+                final List<File> mp = new ArrayList<File>();
+                DistributionArchive.extractIdentity(distributionRoot, moduleRoots, tmp, mp);
+                resolveIdentity(tmp.toFile(), mp, distribution);
+            } finally {
+                DistributionArchive.delete(tmp);
             }
         }
+    }
 
-        final List<File> mp = new ArrayList<File>();
-        final Set<DistributionContentItem> moduleRoots = processor.moduleRoots;
-        for (final DistributionContentItem item : moduleRoots) {
-            final File file = item.getFile(distributionRoot);
-            mp.add(file);
+    /**
+     * Process the content of a distribution root, without resolving the product name and version.
+     *
+     * @param parent           the misc root
+     * @param distributionRoot the distribution root
+     * @param distribution     the distribution
+     * @param pool             the pool used for scanning and hashing
+     * @param pipeline         the pipeline used for hashing, {@code null} to hash within the scanning tasks
+     * @param scope            the content to process, {@code null} to process everything
+     * @param allHashes        whether to calculate both the comparison and metadata hashes of all items
+     * @return the module roots
+     * @throws IOException
+     */
+    static Set<Path> processContent(final DistributionContentItem parent, final Path distributionRoot, final Distribution distribution,
+                                    final ForkJoinPool pool, final HashPipeline pipeline, final ContentScope scope, final boolean allHashes) throws IOException {
+        final DistributionProcessor processor = new DistributionProcessor(distribution, distributionRoot, pipeline, scope,
+                allHashes ? null : PrefilterPairing.current, allHashes);
+        // Build the misc file tree
+        final List<LayeredRoot> layeredRoots = pool.invoke(processor.new MiscTask(parent, distributionRoot));
+
+        // Process the modules and bundles
+        final List<LayerTask> tasks = new ArrayList<LayerTask>();
+        for (final LayeredRoot layeredRoot : layeredRoots) {
+            processor.processLayeredRoot(layeredRoot.item, layeredRoot.item.getFileSystemPath(), layeredRoot.context, tasks);
         }
+        invokeAll(pool, tasks);
+        for (final LayerTask task : tasks) {
+            task.complete();
+        }
+        if (processor.batch != null) {
+            processor.batch.await();
+        }
+        if (processor.incomplete != null) {
+            processor.completeHashes(pool);
+        }
+        if (processor.batch != null && processor.pairing == null) {
+            // The leaves are hashed, complete the directory hashes
+            parent.getTreeHash();
+        }
+        return processor.moduleRoots;
+    }
 
-        // Update name and version
+    /**
+     * Resolve the product name and version.
+     *
+     * @param distributionRoot the distribution root
+     * @param mp               the module roots
+     * @param distribution     the distribution
+     * @throws IOException
+     */
+    static void resolveIdentity(final File distributionRoot, final List<File> mp, final Distribution distribution) throws IOException {
         final ModuleLoader loader = new LocalModuleLoader(mp.toArray(new File[mp.size()]));
         try {
             Module module = loader.loadModule(ModuleIdentifier.create("org.jboss.as.version"));
@@ -104,56 +202,21 @@ class DistributionProcessor {
         }
     }
 
-    /**
-     * Process the misc files.
-     *
-     * @param parent       the parent content item
-     * @param root         the current root
-     * @param distribution the distribution
-     * @throws IOException
-     */
-    void processMisc(final DistributionContentItem parent, final File root, final Distribution distribution) throws IOException {
-        final DistributionContentItem item = new DistributionItemFileImpl(root, parent);
-        if (distribution.isIgnored(item)) {
-            // Skip ignored ... Maybe only files?
-            return;
-        } else if (distribution.isModuleLookupPath(item)) {
-            // Process modules
-            final LayeredContext lc = new LayeredModuleContext(distribution);
-            processLayeredRoot(item, root, lc);
-            return;
-        } else if (distribution.isBundleLookupPath(item)) {
-            /// Process bundles
-            final LayeredContext lc = new LayeredBundleContext(distribution);
-            processLayeredRoot(item, root, lc);
-            return;
-        }
-
-        // Build the misc file tree
-        parent.getChildren().add(item);
-        // Process the children
-        final File[] children = root.listFiles();
-        if (children != null && children.length != 0) {
-            for (final File child : children) {
-                processMisc(item, child, distribution);
-            }
-        }
-    }
-
     /**
      * Process the layered root. This maybe should move to {@code DistributionStructure}.
      *
      * @param parent  the parent content item
      * @param root    the current root
      * @param context the layered context (bundle/module)
+     * @param tasks   the tasks processing the layers and add-ons
      * @throws IOException
      */
-    void processLayeredRoot(final DistributionContentItem parent, final File root, final LayeredContext context) throws IOException {
-        final LayersConfig layersConfig = LayersConfig.getLayersConfig(root);
+    void processLayeredRoot(final DistributionContentItem parent, final Path root, final LayeredContext context, final List<LayerTask> tasks) throws IOException {
+        final LayersConfig layersConfig = DistributionArchive.getLayersConfig(root);
         // Process layers
-        final File layersDir = new File(root, layersConfig.getLayersPath());
+        final Path layersDir = root.resolve(layersConfig.getLayersPath());
         final DistributionContentItem newParent = DistributionStructureImpl.createMiscItem(parent, layersConfig.getLayersPath());
-        if (!layersDir.exists()) {
+        if (!Files.isDirectory(layersDir)) {
             if (layersConfig.isConfigured()) {
                 // Bad config from user
                 throw processingError("No layers directory found at " + layersDir);
@@ -161,16 +224,17 @@ class DistributionProcessor {
             // else this isn't a root that has layers and add-ons
             return;
         }
+        final Map<String, DistributionItemFileImpl> layerDirs = new TreeMap<String, DistributionItemFileImpl>();
+        for (final DistributionItemFileImpl layerDir : listChildren(newParent, layersDir, null)) {
+            if (layerDir.isDirectory()) {
+                layerDirs.put(layerDir.getName(), layerDir);
+            }
+        }
         // check for a valid layer configuration
         final List<String> layers;
         if (layersConfig.isConfigured()) {
             layers = layersConfig.getLayers();
-            if (layers.size() != layersDir.listFiles(new FileFilter() {
-                @Override
-                public boolean accept(File pathName) {
-                    return pathName.isDirectory();
-                }
-            }).length) {
+            if (layers.size() != layerDirs.size()) {
                 throw processingError("configured layers does not match actual ones %s", layers);
             }
         } else {
@@ -179,8 +243,8 @@ class DistributionProcessor {
         }
         //
         for (final String layer : layers) {
-            File layerDir = new File(layersDir, layer);
-            if (!layerDir.exists()) {
+            final DistributionItemFileImpl layerDir = layerDirs.get(layer);
+            if (layerDir == null) {
                 if (layersConfig.isConfigured()) {
                     // Bad config from user
                     throw processingError("Cannot find layer '%s' under directory %s", layer, layersDir);
@@ -188,14 +252,15 @@ class DistributionProcessor {
                 // else this isn't a standard layers and add-ons structure
                 return;
             }
-            context.addLayer(newParent, layer, layerDir);
+            tasks.add(context.addLayer(layer, layerDir.getFileSystemPath()));
         }
         // Finally process the add-ons
-        final File addOnsDir = new File(root, layersConfig.getAddOnsPath());
-        final File[] addOnsList = addOnsDir.listFiles();
-        if (addOnsList != null) {
-            for (final File addOn : addOnsList) {
-                context.addAddOn(newParent, addOn.getName(), addOn);
+        final Path addOnsDir = root.resolve(layersConfig.getAddOnsPath());
+        if (Files.isDirectory(addOnsDir)) {
+            for (final DistributionItemFileImpl addOn : listChildren(newParent, addOnsDir, null)) {
+                if (addOn.isDirectory()) {
+                    tasks.add(context.addAddOn(addOn.getName(), addOn.getFileSystemPath()));
+                }
             }
         }
     }
@@ -203,25 +268,31 @@ class DistributionProcessor {
     /**
      * Try to find determine the modules.
      *
-     * @param parent  the parent content item
-     * @param root    the current root
-     * @param context the module context
+     * @param item       the current directory
+     * @param layer      the currently processed layer
+     * @param layerScope the content to process within the layer, {@code null} for everything
+     * @param modules    the modules found so far
+     * @param tasks      the tasks processing sub directories
+     * @throws IOException
      */
-    void processModules(final DistributionContentItem parent, final File root, final ModuleContext context) {
-
-        final DistributionContentItem item = new DistributionItemFileImpl(root, parent);
-        final File moduleXml = new File(root, "module.xml");
-        if (moduleXml.exists()) {
-            // Only ignore actual modules
-            if (context.isIgnored(item)) {
-                return;
+    void processModules(final DistributionItemFileImpl item, final Distribution.ProcessedLayer layer, final ContentScope.Layer layerScope,
+                        final List<DistributionModuleItem> modules, final List<ModuleTask> tasks) throws IOException {
+
+        final List<DistributionItemFileImpl> children = listChildren(item, item.getFileSystemPath(), OVERLAYS_FILTER);
+        for (final DistributionItemFileImpl child : children) {
+            if (child.isLeaf() && child.getName().equals("module.xml")) {
+                // Only ignore actual modules
+                if (distribution.isIgnored(item)) {
+                    return;
+                }
+                modules.add(layer.createDistributionModuleItem(item));
+                hash(item, JarDiffUtils.isRawModuleComparison(), ModuleDiffUtils.isInspected(layer.getName(), item.getPath('/')));
+                break;
             }
-            context.addModule(item);
         }
-        final File[] children = root.listFiles(OVERLAYS_FILTER);
-        if (children != null && children.length != 0) {
-            for (final File child : children) {
-                processModules(item, child, context);
+        for (final DistributionItemFileImpl child : children) {
+            if (child.isDirectory() && (layerScope == null || layerScope.includes(child, false))) {
+                tasks.add(new ModuleTask(child, layer, layerScope, false));
             }
         }
     }
@@ -229,139 +300,458 @@ class DistributionProcessor {
     /**
      * Try to determine the bundles.
      *
-     * @param parent  the parent content item
-     * @param root    the current root
-     * @param context the bundle context
+     * @param item       the current directory
+     * @param layer      the currently processed layer
+     * @param layerScope the content to process within the layer, {@code null} for everything
+     * @param bundles    the bundles found so far
+     * @param tasks      the tasks processing sub directories
+     * @throws IOException
      */
-    void processBundles(final DistributionContentItem parent, final File root, final ModuleContext context) {
-
-        final DistributionContentItem item = new DistributionItemFileImpl(root, parent);
-        final File[] children = root.listFiles(OVERLAYS_FILTER);
-        if (children != null && children.length != 0) {
-            for (final File child : children) {
-                if (!child.isDirectory()) {
-                    // Only ignore actual bundles
-                    if (context.isIgnored(item)) {
-                        return;
-                    }
-                    context.addModule(item);
+    void processBundles(final DistributionItemFileImpl item, final Distribution.ProcessedLayer layer, final ContentScope.Layer layerScope,
+                        final List<DistributionModuleItem> bundles, final List<ModuleTask> tasks) throws IOException {
+
+        final List<DistributionItemFileImpl> children = listChildren(item, item.getFileSystemPath(), OVERLAYS_FILTER);
+        for (final DistributionItemFileImpl child : children) {
+            if (!child.isDirectory()) {
+                // Only ignore actual bundles
+                if (distribution.isIgnored(item)) {
                     return;
                 }
+                bundles.add(layer.createDistributionModuleItem(item));
+                hash(item, JarDiffUtils.isRawModuleComparison(), false);
+                return;
             }
-            for (final File child : children) {
-                processBundles(item, child, context);
+        }
+        for (final DistributionItemFileImpl child : children) {
+            if (layerScope == null || layerScope.includes(child, true)) {
+                tasks.add(new ModuleTask(child, layer, layerScope, true));
             }
         }
     }
 
-    interface ProcessorContext {
+    /**
+     * Hash an item while processing the distribution. A normalized comparison hash is only calculated on demand, the
+     * metadata hash is enough to detect unchanged content. Otherwise the metadata hash is only needed for content
+     * ending up in the patch.
+     * <p/>
+     * With the prefilter the item is paired with the item of the other distribution first, and only hashed as far as
+     * the attributes of both cannot decide the comparison.
+     *
+     * @param item      the item
+     * @param raw       whether the comparison hash of the item is a plain content hash
+     * @param inspected whether the module of the item is inspected in detail
+     */
+    void hash(final DistributionItemFileImpl item, final boolean raw, final boolean inspected) {
+        if (pairing == null) {
+            hashContent(item, raw);
+            if (incomplete != null) {
+                incomplete.add(item);
+            } else if (inspected) {
+                parseModuleXml(item);
+            }
+            return;
+        }
+        final PrefilterPairing.Candidate other = pairing.pair(getPairingKey(item), new PrefilterPairing.Candidate(item, raw, inspected));
+        if (other == null) {
+            // Decided once the other distribution gets there, or hashed afterwards if it never does
+            return;
+        }
+        switch (AttributePrefilter.evaluate(other.item, item)) {
+            case UNCHANGED:
+                // Nothing to hash at all
+                break;
+            case MODIFIED:
+                // Only the metadata hashes end up in the patch
+                hashMetadata(other.item);
+                hashMetadata(item);
+                break;
+            default:
+                hashContent(other.item, other.raw);
+                hashContent(item, raw);
+                if (inspected) {
+                    parseModuleXml(other.item);
+                    parseModuleXml(item);
+                }
+        }
+    }
 
-        boolean isIgnored(final DistributionContentItem item);
+    private void hashContent(final DistributionItemFileImpl item, final boolean raw) {
+        if (item.getCanonical() != item) {
+            // Hashed once for the same physical file, the hashes are shared when needed
+            return;
+        }
+        if (batch == null) {
+            if (raw) {
+                item.getComparisonHash();
+            } else {
+                item.getMetadataHash();
+            }
+            return;
+        }
+        final ContentDigest.Algorithm algorithm = raw ? JarDiffUtils.getContentAlgorithm() : ContentDigest.Algorithm.SHA1;
+        final boolean metadata = algorithm == ContentDigest.Algorithm.SHA1;
+        if (!item.populateFromCache(raw, metadata)) {
+            batch.submit(item, algorithm, raw, metadata);
+        }
+    }
 
+    /**
+     * Calculate the hashes not covered by the processing, i.e. normalized comparison hashes and metadata hashes
+     * next to a comparison hash using another algorithm. Forks a task per item, the items are independent.
+     *
+     * @param pool the pool
+     */
+    private void completeHashes(final ForkJoinPool pool) {
+        final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (final DistributionItemFileImpl item : incomplete) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    item.getComparisonHash();
+                    item.getMetadataHash();
+                }
+            });
+        }
+        invokeAll(pool, tasks);
     }
 
-    interface ModuleContext extends ProcessorContext {
+    private void hashMetadata(final DistributionItemFileImpl item) {
+        if (item.getCanonical() != item) {
+            return;
+        }
+        if (batch == null) {
+            item.getMetadataHash();
+        } else if (!item.populateFromCache(false, true)) {
+            batch.submit(item, ContentDigest.Algorithm.SHA1, false, true);
+        }
+    }
 
-        void addModule(final DistributionContentItem module);
+    private static void parseModuleXml(final DistributionItemFileImpl item) {
+        // Parse the module.xml on the worker, the detailed inspection only replays the result
+        try {
+            item.getModuleXml();
+        } catch (IOException | RuntimeException e) {
+            // Reported when the module is actually inspected
+        }
     }
 
-    abstract static class LayeredContext implements ProcessorContext {
+    private String getPairingKey(final DistributionItemFileImpl item) {
+        // Independent of the file system separator, since either distribution can be an archive
+        final StringBuilder key = new StringBuilder();
+        for (final Path name : distributionRoot.relativize(item.getFileSystemPath())) {
+            if (key.length() > 0) {
+                key.append('/');
+            }
+            key.append(name.toString());
+        }
+        return key.toString();
+    }
 
-        protected final Distribution distribution;
+    /**
+     * Hash the items the prefilter could not pair, once both distributions are processed. These are the added and
+     * removed items, which need their metadata hashes for the patch.
+     *
+     * @param pairing  the pairing
+     * @param pool     the pool used for hashing
+     * @param pipeline the pipeline used for hashing, {@code null} to hash within the tasks
+     */
+    static void hashUnpaired(final PrefilterPairing pairing, final ForkJoinPool pool, final HashPipeline pipeline) {
+        final DistributionProcessor processor = new DistributionProcessor(null, null, pipeline, null, null, false);
+        final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for (final PrefilterPairing.Candidate candidate : pairing.getUnpaired()) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    processor.hash(candidate.item, candidate.raw, candidate.inspected);
+                }
+            });
+        }
+        invokeAll(pool, tasks);
+        if (processor.batch != null) {
+            processor.batch.await();
+        }
+    }
+
+    /**
+     * List the entries of a directory, reading the attributes of each entry once. The result is sorted by name,
+     * so that the processing order does not depend on the file system.
+     *
+     * @param parent the parent content item
+     * @param dir    the directory
+     * @param filter the entry filter, can be {@code null}
+     * @return the content items for the entries
+     * @throws IOException
+     */
+    static List<DistributionItemFileImpl> listChildren(final DistributionContentItem parent, final Path dir, final DirectoryStream.Filter<Path> filter) throws IOException {
+        final Map<String, DistributionItemFileImpl> children = new TreeMap<String, DistributionItemFileImpl>();
+        final DirectoryStream<Path> stream = filter == null ? Files.newDirectoryStream(dir) : Files.newDirectoryStream(dir, filter);
+        try {
+            for (final Path child : stream) {
+                final DistributionItemFileImpl item = new DistributionItemFileImpl(child, readAttributes(child), parent);
+                children.put(item.getName(), item);
+            }
+        } finally {
+            stream.close();
+        }
+        return new ArrayList<DistributionItemFileImpl>(children.values());
+    }
+
+    /**
+     * List the entries of a directory in name order, reading the attributes of each entry once, for hashing a
+     * directory without the overhead of content items.
+     *
+     * @param dir the directory
+     * @return the entries and their attributes, in name order
+     * @throws IOException
+     */
+    static Map<Path, BasicFileAttributes> listEntries(final Path dir) throws IOException {
+        final Map<String, Path> sorted = new TreeMap<String, Path>();
+        final DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+        try {
+            for (final Path child : stream) {
+                sorted.put(child.getFileName().toString(), child);
+            }
+        } finally {
+            stream.close();
+        }
+        final Map<Path, BasicFileAttributes> entries = new LinkedHashMap<Path, BasicFileAttributes>();
+        for (final Path child : sorted.values()) {
+            entries.put(child, readAttributes(child));
+        }
+        return entries;
+    }
+
+    static BasicFileAttributes readAttributes(final Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // Broken symbolic link, use the attributes of the link itself
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        }
+    }
 
-        protected LayeredContext(Distribution distribution) {
-            this.distribution = distribution;
+    /**
+     * Invoke a number of tasks from outside the pool and wait for their completion.
+     *
+     * @param pool  the pool
+     * @param tasks the tasks
+     */
+    static void invokeAll(final ForkJoinPool pool, final Collection<? extends ForkJoinTask<?>> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Walks a single directory of the misc tree. The items are added to the parent, whereas child directories
+     * are processed by forked tasks.
+     */
+    class MiscTask extends RecursiveTask<List<LayeredRoot>> {
+
+        private final DistributionContentItem parent;
+        private final Path root;
+
+        MiscTask(DistributionContentItem parent, Path root) {
+            this.parent = parent;
+            this.root = root;
         }
 
         @Override
-        public boolean isIgnored(DistributionContentItem item) {
-            return distribution.isIgnored(item);
+        protected List<LayeredRoot> compute() {
+            final List<LayeredRoot> layeredRoots = new ArrayList<LayeredRoot>();
+            final List<MiscTask> tasks = new ArrayList<MiscTask>();
+            final List<DistributionItemFileImpl> children;
+            try {
+                children = listChildren(parent, root, null);
+            } catch (IOException e) {
+                throw processingError(e, "failed to process %s", root);
+            }
+            for (final DistributionItemFileImpl item : children) {
+                if (distribution.isIgnored(item)) {
+                    // Skip ignored ... Maybe only files?
+                    continue;
+                } else if (distribution.isModuleLookupPath(item)) {
+                    // Process modules
+                    layeredRoots.add(new LayeredRoot(item, new LayeredModuleContext()));
+                    continue;
+                } else if (distribution.isBundleLookupPath(item)) {
+                    /// Process bundles
+                    layeredRoots.add(new LayeredRoot(item, new LayeredBundleContext()));
+                    continue;
+                } else if (scope != null && !scope.includesMisc(item)) {
+                    // Not part of the specified content
+                    continue;
+                }
+                // Build the misc file tree
+                parent.getChildren().add(item);
+                if (item.isDirectory()) {
+                    tasks.add(new MiscTask(item, item.getFileSystemPath()));
+                } else if ((batch != null || pairing != null || incomplete != null) && item.isLeaf()) {
+                    hash(item, JarDiffUtils.isRawLeafComparison(item.getName()), false);
+                }
+            }
+            // Process the children
+            invokeAll(tasks);
+            for (final MiscTask task : tasks) {
+                layeredRoots.addAll(task.join());
+            }
+            if (batch == null && pairing == null) {
+                // Complete the directory hash bottom-up, the subdirectories are already done at this point
+                parent.getTreeHash();
+            }
+            return layeredRoots;
         }
+    }
 
-        void addLayer(DistributionContentItem parent, String layer, File layerDir) {
-            final Distribution.ProcessedLayer processedLayer = distribution.addLayer(layer);
-            final DistributionContentItem item = new DistributionItemFileImpl(layerDir, parent);
-            addModuleRoot(item);
-            doProcess(layerDir, processedLayer);
+    /**
+     * Processes a directory within a layer, checking for a module or bundle.
+     */
+    class ModuleTask extends RecursiveTask<List<DistributionModuleItem>> {
+
+        private final DistributionItemFileImpl item;
+        private final Distribution.ProcessedLayer layer;
+        private final ContentScope.Layer layerScope;
+        private final boolean bundle;
+
+        ModuleTask(DistributionItemFileImpl item, Distribution.ProcessedLayer layer, ContentScope.Layer layerScope, boolean bundle) {
+            this.item = item;
+            this.layer = layer;
+            this.layerScope = layerScope;
+            this.bundle = bundle;
         }
 
-        void addAddOn(DistributionContentItem parent, String name, File addOn) {
-            final Distribution.ProcessedLayer processedLayer = distribution.addAddOn(name);
-            final DistributionContentItem item = new DistributionItemFileImpl(addOn, parent);
-            addModuleRoot(item);
-            doProcess(addOn, processedLayer);
+        @Override
+        protected List<DistributionModuleItem> compute() {
+            final List<DistributionModuleItem> items = new ArrayList<DistributionModuleItem>();
+            final List<ModuleTask> tasks = new ArrayList<ModuleTask>();
+            try {
+                if (bundle) {
+                    processBundles(item, layer, layerScope, items, tasks);
+                } else {
+                    processModules(item, layer, layerScope, items, tasks);
+                }
+            } catch (IOException e) {
+                throw processingError(e, "failed to process %s", item.getFileSystemPath());
+            }
+            invokeAll(tasks);
+            for (final ModuleTask task : tasks) {
+                items.addAll(task.join());
+            }
+            return items;
         }
+    }
 
-        void addModuleRoot(final DistributionContentItem item) {
-            //
+    /**
+     * Processes a single layer or add-on.
+     */
+    class LayerTask extends RecursiveAction {
+
+        private final Path layerDir;
+        private final Distribution.ProcessedLayer layer;
+        private final ContentScope.Layer layerScope;
+        private final boolean bundles;
+        private final List<ModuleTask> tasks = new ArrayList<ModuleTask>();
+
+        LayerTask(Path layerDir, Distribution.ProcessedLayer layer, ContentScope.Layer layerScope, boolean bundles) {
+            this.layerDir = layerDir;
+            this.layer = layer;
+            this.layerScope = layerScope;
+            this.bundles = bundles;
         }
 
-        void doProcess(final File layerDir, final Distribution.ProcessedLayer processedLayer) {
-            final File[] children = layerDir.listFiles();
-            if (children != null && children.length > 0) {
-                for (final File child : children) {
-                    // Skip the layer dir as parent... we only need the module name and layer
-                    process(null, child, processedLayer);
+        @Override
+        protected void compute() {
+            final List<DistributionItemFileImpl> children;
+            try {
+                children = listChildren(null, layerDir, null);
+            } catch (IOException e) {
+                throw processingError(e, "failed to process %s", layerDir);
+            }
+            for (final DistributionItemFileImpl child : children) {
+                // Skip the layer dir as parent... we only need the module name and layer
+                if (child.isDirectory() && (layerScope == null || layerScope.includes(child, bundles))) {
+                    tasks.add(new ModuleTask(child, layer, layerScope, bundles));
                 }
             }
+            invokeAll(tasks);
         }
 
         /**
-         * Process either a bundle or module.
+         * Add the results to the processed layer, once all tasks completed.
+         */
+        void complete() {
+            final Set<DistributionModuleItem> target = bundles ? layer.getBundles() : layer.getModules();
+            for (final ModuleTask task : tasks) {
+                target.addAll(task.join());
+            }
+        }
+    }
+
+    static class LayeredRoot {
+
+        private final DistributionItemFileImpl item;
+        private final LayeredContext context;
+
+        LayeredRoot(DistributionItemFileImpl item, LayeredContext context) {
+            this.item = item;
+            this.context = context;
+        }
+    }
+
+    abstract class LayeredContext {
+
+        LayerTask addLayer(String layer, Path layerDir) {
+            final Distribution.ProcessedLayer processedLayer = distribution.addLayer(layer);
+            addModuleRoot(layerDir);
+            return createTask(layerDir, processedLayer, scope == null ? null : scope.getLayer(layer));
+        }
+
+        LayerTask addAddOn(String name, Path addOn) {
+            final Distribution.ProcessedLayer processedLayer = distribution.addAddOn(name);
+            addModuleRoot(addOn);
+            return createTask(addOn, processedLayer, scope == null ? null : scope.getLayer(name));
+        }
+
+        void addModuleRoot(final Path path) {
+            //
+        }
+
+        /**
+         * Create the task processing either the bundles or modules of a layer.
          *
-         * @param parent         the parent content item
          * @param layerDir       the layer dir
          * @param processedLayer the currently processed layer
+         * @param layerScope     the content to process within the layer, {@code null} for everything
+         * @return the task
          */
-        abstract void process(DistributionContentItem parent, File layerDir, Distribution.ProcessedLayer processedLayer);
+        abstract LayerTask createTask(Path layerDir, Distribution.ProcessedLayer processedLayer, ContentScope.Layer layerScope);
 
     }
 
     class LayeredModuleContext extends LayeredContext {
 
-        LayeredModuleContext(Distribution distribution) {
-            super(distribution);
-        }
-
         @Override
-        void addModuleRoot(DistributionContentItem item) {
-            moduleRoots.add(item);
+        void addModuleRoot(Path path) {
+            moduleRoots.add(path);
         }
 
-        void process(DistributionContentItem parent, File layerDir, final Distribution.ProcessedLayer processedLayer) {
-            processModules(parent, layerDir, new ModuleContext() {
-                @Override
-                public void addModule(DistributionContentItem module) {
-                    processedLayer.addModule(module);
-                }
-
-                @Override
-                public boolean isIgnored(DistributionContentItem item) {
-                    return distribution.isIgnored(item);
-                }
-            });
+        @Override
+        LayerTask createTask(Path layerDir, Distribution.ProcessedLayer processedLayer, ContentScope.Layer layerScope) {
+            return new LayerTask(layerDir, processedLayer, layerScope, false);
         }
     }
 
     class LayeredBundleContext extends LayeredContext {
 
-        LayeredBundleContext(Distribution distribution) {
-            super(distribution);
-        }
-
         @Override
-        void process(final DistributionContentItem parent, final File layerDir, final Distribution.ProcessedLayer processedLayer) {
-            processBundles(parent, layerDir, new ModuleContext() {
-                @Override
-                public void addModule(DistributionContentItem module) {
-                    processedLayer.addBundle(module);
-                }
-
-                @Override
-                public boolean isIgnored(DistributionContentItem item) {
-                    return distribution.isIgnored(item);
-                }
-            });
+        LayerTask createTask(Path layerDir, Distribution.ProcessedLayer processedLayer, ContentScope.Layer layerScope) {
+            return new LayerTask(layerDir, processedLayer, layerScope, true);
         }
     }
 
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.as.patching.IoUtils;
+
+/**
+ * Binary snapshot format for a {@code Distribution}, as compact alternative to {@code DistributionXml}.
+ * <p/>
+ * Layout, all numbers are big endian:
+ * - header: magic, format version, comparison mode
+ * - string table: all names (path segments, module names, slots, layers) stored once and referenced by index
+ * - name and version of the distribution
+ * - layers and add-ons, each with their bundles and modules sorted by name and slot
+ * - the misc tree in depth first order
+ * <p/>
+ * Hashes are stored as raw bytes. The file is read through a memory mapped buffer.
+ *
+ * @author agent
+ */
+class DistributionSnapshot {
+
+    private static final int MAGIC = 0x50474453; // PGDS
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NONE = -1;
+
+    private DistributionSnapshot() {
+        //
+    }
+
+    /**
+     * Whether the file is a binary distribution snapshot.
+     *
+     * @param file the file
+     * @return {@code true} if the file starts with the snapshot header
+     */
+    static boolean isBinarySnapshot(final File file) {
+        if (!file.isFile() || file.length() < 8) {
+            return false;
+        }
+        try {
+            final InputStream is = Files.newInputStream(file.toPath());
+            try {
+                final byte[] header = new byte[4];
+                int read = 0;
+                while (read < header.length) {
+                    final int l = is.read(header, read, header.length - read);
+                    if (l == -1) {
+                        return false;
+                    }
+                    read += l;
+                }
+                return ByteBuffer.wrap(header).getInt() == MAGIC;
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write the binary snapshot.
+     *
+     * @param file         the target file
+     * @param distribution the distribution
+     * @throws IOException
+     */
+    static void write(final File file, final Distribution distribution) throws IOException {
+        // Collect the names first, the string table is written upfront
+        final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        intern(strings, distribution.getName());
+        intern(strings, distribution.getVersion());
+        for (final String name : distribution.getLayers()) {
+            internLayer(strings, distribution.getLayer(name));
+        }
+        for (final String name : distribution.getAddOns()) {
+            internLayer(strings, distribution.getAddOn(name));
+        }
+        internNodes(strings, distribution.getRoot().getChildren());
+
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeByte(distribution.getComparisonMode());
+
+            os.writeInt(strings.size());
+            for (final String string : strings.keySet()) {
+                final byte[] bytes = string.getBytes(UTF_8);
+                os.writeInt(bytes.length);
+                os.write(bytes);
+            }
+
+            writeString(os, strings, distribution.getName());
+            writeString(os, strings, distribution.getVersion());
+
+            final Set<String> layers = distribution.getLayers();
+            final Set<String> addOns = distribution.getAddOns();
+            os.writeInt(layers.size() + addOns.size());
+            for (final String name : layers) {
+                writeLayer(os, strings, distribution.getLayer(name), false);
+            }
+            for (final String name : addOns) {
+                writeLayer(os, strings, distribution.getAddOn(name), true);
+            }
+
+            writeNodes(os, strings, distribution.getRoot().getChildren());
+        } finally {
+            IoUtils.safeClose(os);
+        }
+    }
+
+    /**
+     * Read a binary snapshot.
+     *
+     * @param file the snapshot
+     * @return the distribution
+     * @throws IOException
+     */
+    static Distribution read(final File file) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        final MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("not a distribution snapshot " + file);
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported distribution snapshot version " + version + " " + file);
+        }
+        final Distribution distribution = new Distribution();
+        distribution.setComparisonMode(buffer.get());
+
+        final String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+
+        distribution.setName(readString(buffer, strings));
+        distribution.setVersion(readString(buffer, strings));
+
+        final int layers = buffer.getInt();
+        for (int i = 0; i < layers; i++) {
+            final boolean addOn = buffer.get() != 0;
+            final String name = readString(buffer, strings);
+            final Distribution.ProcessedLayer layer = addOn ? distribution.addAddOn(name) : distribution.addLayer(name);
+            readModuleItems(buffer, strings, layer.getBundles());
+            readModuleItems(buffer, strings, layer.getModules());
+        }
+
+        readNodes(buffer, strings, distribution.getRoot());
+        return distribution;
+    }
+
+    private static void internLayer(final Map<String, Integer> strings, final Distribution.ProcessedLayer layer) {
+        intern(strings, layer.getName());
+        for (final DistributionModuleItem item : layer.getBundles()) {
+            intern(strings, item.getName());
+            intern(strings, item.getSlot());
+        }
+        for (final DistributionModuleItem item : layer.getModules()) {
+            intern(strings, item.getName());
+            intern(strings, item.getSlot());
+        }
+    }
+
+    private static void internNodes(final Map<String, Integer> strings, final Collection<DistributionContentItem> items) {
+        for (final DistributionContentItem item : items) {
+            intern(strings, item.getName());
+            internNodes(strings, item.getChildren());
+        }
+    }
+
+    private static void intern(final Map<String, Integer> strings, final String string) {
+        if (string != null && !strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    private static void writeString(final DataOutputStream os, final Map<String, Integer> strings, final String string) throws IOException {
+        os.writeInt(string == null ? NONE : strings.get(string));
+    }
+
+    private static void writeHash(final DataOutputStream os, final byte[] hash) throws IOException {
+        os.writeByte(hash.length);
+        os.write(hash);
+    }
+
+    private static void writeLayer(final DataOutputStream os, final Map<String, Integer> strings, final Distribution.ProcessedLayer layer, final boolean addOn) throws IOException {
+        os.writeByte(addOn ? 1 : 0);
+        writeString(os, strings, layer.getName());
+        writeModuleItems(os, strings, layer.getBundles());
+        writeModuleItems(os, strings, layer.getModules());
+    }
+
+    private static void writeModuleItems(final DataOutputStream os, final Map<String, Integer> strings, final Set<DistributionModuleItem> items) throws IOException {
+        // Sorted by name and slot, since these are tree sets
+        os.writeInt(items.size());
+        for (final DistributionModuleItem item : items) {
+            writeString(os, strings, item.getName());
+            writeString(os, strings, item.getSlot());
+            writeHash(os, item.getComparisonHash());
+            writeHash(os, item.getMetadataHash());
+        }
+    }
+
+    private static void writeNodes(final DataOutputStream os, final Map<String, Integer> strings, final Collection<DistributionContentItem> items) throws IOException {
+        os.writeInt(items.size());
+        for (final DistributionContentItem item : items) {
+            writeString(os, strings, item.getName());
+            if (item.isLeaf()) {
+                os.writeByte(1);
+                writeHash(os, item.getComparisonHash());
+                writeHash(os, item.getMetadataHash());
+            } else {
+                os.writeByte(0);
+                writeNodes(os, strings, item.getChildren());
+            }
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer, final String[] strings) {
+        final int index = buffer.getInt();
+        return index == NONE ? null : strings[index];
+    }
+
+    private static byte[] readHash(final ByteBuffer buffer) {
+        final byte[] hash = new byte[buffer.get() & 0xff];
+        buffer.get(hash);
+        return hash;
+    }
+
+    private static void readModuleItems(final ByteBuffer buffer, final String[] strings, final Set<DistributionModuleItem> items) {
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final String name = readString(buffer, strings);
+            final String slot = readString(buffer, strings);
+            final byte[] comparison = readHash(buffer);
+            final byte[] metadata = readHash(buffer);
+            items.add(new DistributionModuleItem(name, slot, comparison, metadata));
+        }
+    }
+
+    private static void readNodes(final ByteBuffer buffer, final String[] strings, final DistributionContentItem parent) {
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final String name = readString(buffer, strings);
+            final boolean leaf = buffer.get() != 0;
+            final DistributionItemImpl item;
+            if (leaf) {
+                final byte[] comparison = readHash(buffer);
+                final byte[] metadata = readHash(buffer);
+                item = new DistributionItemImpl(parent, name, comparison, metadata, true);
+            } else {
+                item = new DistributionItemImpl(parent, name, IoUtils.NO_CONTENT, IoUtils.NO_CONTENT, false);
+                readNodes(buffer, strings, item);
+            }
+            parent.getChildren().add(item);
+        }
+    }
+
+}
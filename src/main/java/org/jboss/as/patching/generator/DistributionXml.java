@@ -88,7 +88,8 @@ class DistributionXml {
 
     public static void marshal(final OutputStream os, final Distribution root) throws XMLStreamException {
         final XMLOutputFactory outputFactory = OUTPUT_FACTORY;
-        final XMLStreamWriter streamWriter = outputFactory.createXMLStreamWriter(os);
+        // The document does not declare an encoding, so it has to be UTF-8
+        final XMLStreamWriter streamWriter = outputFactory.createXMLStreamWriter(os, "UTF-8");
         MAPPER.deparseDocument(INSTANCE, root, streamWriter);
         streamWriter.close();
     }
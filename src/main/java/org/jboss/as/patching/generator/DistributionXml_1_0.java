@@ -90,9 +90,11 @@ class DistributionXml_1_0 implements XMLStreamConstants, XMLElementReader<Distri
 
         DIRECTORY("directory"),
         COMPARISON_HASH("comparison-hash"),
+        COMPARISON_MODE("comparison-mode"),
         METADATA_HASH("metadata-hash"),
         NAME("name"),
         SLOT("slot"),
+        VERSION("version"),
 
         // default unknown attribute
         UNKNOWN(null);
@@ -126,6 +128,13 @@ class DistributionXml_1_0 implements XMLStreamConstants, XMLElementReader<Distri
         writer.writeStartDocument();
         writer.writeStartElement(Element.DISTRIBUTION.name);
         writer.writeDefaultNamespace(DistributionXml.Namespace.DISTRIBUTION_1_0.getNamespace());
+        if (distribution.getName() != null) {
+            writer.writeAttribute(Attribute.NAME.name, distribution.getName());
+        }
+        if (distribution.getVersion() != null) {
+            writer.writeAttribute(Attribute.VERSION.name, distribution.getVersion());
+        }
+        writer.writeAttribute(Attribute.COMPARISON_MODE.name, String.valueOf(distribution.getComparisonMode()));
 
         final DistributionContentItem root = distribution.getRoot();
         final Collection<DistributionContentItem> children = root.getChildren();
@@ -218,6 +227,24 @@ class DistributionXml_1_0 implements XMLStreamConstants, XMLElementReader<Distri
 
     @Override
     public void readElement(final XMLExtendedStreamReader reader, final Distribution distribution) throws XMLStreamException {
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final String value = reader.getAttributeValue(i);
+            final Attribute attribute = Attribute.forName(reader.getAttributeLocalName(i));
+            switch (attribute) {
+                case NAME:
+                    distribution.setName(value);
+                    break;
+                case VERSION:
+                    distribution.setVersion(value);
+                    break;
+                case COMPARISON_MODE:
+                    distribution.setComparisonMode(Byte.valueOf(value));
+                    break;
+                default:
+                    throw unexpectedAttribute(reader, i);
+            }
+        }
         final DistributionContentItem root = distribution.getRoot();
         while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
             final Element element = Element.forName(reader.getLocalName());
@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe replacement for {@code HashUtils.hashFile()}, which serializes all callers on a single shared digest.
+ * The resulting hashes are identical: directories are hashed by digesting the content of their children in name order.
+ * Other {@link ContentDigest.Algorithm algorithms} can be used for the comparison hashes.
+ * <p/>
+ * Digests and buffers are pooled per thread, so hashing a file does not allocate any of them. Small files are read
+ * into a direct buffer, large files on the default file system are memory mapped instead. Setting
+ * {@code patch.gen.hash.statistics} reports how many files were hashed with how many allocations.
+ *
+ * @author agent
+ */
+class FileHashUtils {
+
+    private static final boolean STATISTICS = Boolean.getBoolean("patch.gen.hash.statistics");
+
+    // Files of at least this size are memory mapped, if possible
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+    // Very large files are mapped in chunks
+    private static final long MAP_CHUNK_SIZE = 256 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SCRATCH_BUFFER_SIZE = 8 * 1024;
+
+    private static final AtomicLong files = new AtomicLong();
+    private static final AtomicLong bytes = new AtomicLong();
+    private static final AtomicLong mappedFiles = new AtomicLong();
+    private static final AtomicLong digestAllocations = new AtomicLong();
+    private static final AtomicLong bufferAllocations = new AtomicLong();
+
+    private static final ThreadLocal<Context> CONTEXT = new ThreadLocal<Context>() {
+        @Override
+        protected Context initialValue() {
+            return new Context();
+        }
+    };
+
+    private FileHashUtils() {
+        //
+    }
+
+    /**
+     * Hash a file or directory.
+     *
+     * @param path the path
+     * @return the SHA-1 hash
+     * @throws IOException
+     */
+    static byte[] hashFile(final Path path) throws IOException {
+        return hashFile(path, Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    /**
+     * Hash a file or directory, with the attributes already known.
+     *
+     * @param path       the path
+     * @param attributes the file attributes
+     * @return the SHA-1 hash
+     * @throws IOException
+     */
+    static byte[] hashFile(final Path path, final BasicFileAttributes attributes) throws IOException {
+        return hashFile(path, attributes, ContentDigest.Algorithm.SHA1);
+    }
+
+    /**
+     * Hash a file or directory, using the given algorithm.
+     *
+     * @param path      the path
+     * @param algorithm the algorithm
+     * @return the hash
+     * @throws IOException
+     */
+    static byte[] hashFile(final Path path, final ContentDigest.Algorithm algorithm) throws IOException {
+        return hashFile(path, Files.readAttributes(path, BasicFileAttributes.class), algorithm);
+    }
+
+    static byte[] hashFile(final Path path, final BasicFileAttributes attributes, final ContentDigest.Algorithm algorithm) throws IOException {
+        final ContentDigest digest = acquireDigest(algorithm);
+        try {
+            updateDigest(digest, path, attributes.isDirectory());
+            return digest.digest();
+        } finally {
+            releaseDigest(algorithm, digest);
+        }
+    }
+
+    static void updateDigest(final ContentDigest digest, final Path path, final boolean directory) throws IOException {
+        if (directory) {
+            for (final Map.Entry<Path, BasicFileAttributes> child : DistributionProcessor.listEntries(path).entrySet()) {
+                updateDigest(digest, child.getKey(), child.getValue().isDirectory());
+            }
+        } else {
+            updateDigests(path, digest);
+        }
+    }
+
+    /**
+     * Read a file once, feeding its content to all the digests.
+     *
+     * @param file    the file
+     * @param digests the digests
+     * @throws IOException
+     */
+    static void updateDigests(final Path file, final ContentDigest... digests) throws IOException {
+        final SeekableByteChannel channel = Files.newByteChannel(file);
+        try {
+            final long size = channel.size();
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+            if (channel instanceof FileChannel && size >= MAP_THRESHOLD) {
+                mappedFiles.incrementAndGet();
+                final FileChannel fileChannel = (FileChannel) channel;
+                for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                    final MappedByteBuffer mapped = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK_SIZE, size - position));
+                    update(mapped, digests);
+                }
+            } else {
+                // Channels of other file systems (e.g. zip) read through a heap buffer anyway
+                final Context context = CONTEXT.get();
+                final ByteBuffer buffer = channel instanceof FileChannel ? context.getDirectBuffer() : context.getHeapBuffer();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    update(buffer, digests);
+                    buffer.clear();
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void update(final ByteBuffer buffer, final ContentDigest... digests) {
+        final int position = buffer.position();
+        for (final ContentDigest digest : digests) {
+            buffer.position(position);
+            digest.update(buffer);
+        }
+    }
+
+    /**
+     * Get a digest from the pool of the current thread. Digests can be acquired while holding others, but have to be
+     * released by the same thread.
+     *
+     * @param algorithm the algorithm
+     * @return the digest, which is reset
+     */
+    static ContentDigest acquireDigest(final ContentDigest.Algorithm algorithm) {
+        final ContentDigest digest = CONTEXT.get().digests.get(algorithm).poll();
+        if (digest != null) {
+            return digest;
+        }
+        digestAllocations.incrementAndGet();
+        return algorithm.create();
+    }
+
+    /**
+     * Return a digest to the pool of the current thread.
+     *
+     * @param algorithm the algorithm of the digest
+     * @param digest    the digest
+     */
+    static void releaseDigest(final ContentDigest.Algorithm algorithm, final ContentDigest digest) {
+        digest.reset();
+        CONTEXT.get().digests.get(algorithm).push(digest);
+    }
+
+    /**
+     * Get the read buffer of the current thread, for reading streams. The buffer must not be used by anything else
+     * while in use, e.g. by a nested call hashing another file.
+     *
+     * @return the buffer
+     */
+    static byte[] getBuffer() {
+        return CONTEXT.get().getStreamBuffer();
+    }
+
+    /**
+     * Get the scratch buffer of the current thread, for copying content which is digested right away, e.g. out of a
+     * direct buffer. Unlike the {@link #getBuffer() read buffer}, it may be used while a stream is being read.
+     *
+     * @return the buffer
+     */
+    static byte[] getScratchBuffer() {
+        return CONTEXT.get().getScratchBuffer();
+    }
+
+    /**
+     * Print how many files were hashed and how many digests and buffers needed to be allocated for that, if enabled.
+     */
+    static void report() {
+        if (STATISTICS) {
+            System.out.printf("INFO: hashed %d files (%d bytes, %d memory mapped), allocated %d digests and %d buffers%n",
+                    files.get(), bytes.get(), mappedFiles.get(), digestAllocations.get(), bufferAllocations.get());
+        }
+    }
+
+    private static class Context {
+
+        private final Map<ContentDigest.Algorithm, Deque<ContentDigest>> digests =
+                new EnumMap<ContentDigest.Algorithm, Deque<ContentDigest>>(ContentDigest.Algorithm.class);
+        private ByteBuffer directBuffer;
+        private ByteBuffer heapBuffer;
+        private byte[] streamBuffer;
+        private byte[] scratchBuffer;
+
+        Context() {
+            for (final ContentDigest.Algorithm algorithm : ContentDigest.Algorithm.values()) {
+                digests.put(algorithm, new ArrayDeque<ContentDigest>());
+            }
+        }
+
+        ByteBuffer getDirectBuffer() {
+            if (directBuffer == null) {
+                bufferAllocations.incrementAndGet();
+                directBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            return directBuffer;
+        }
+
+        ByteBuffer getHeapBuffer() {
+            if (heapBuffer == null) {
+                bufferAllocations.incrementAndGet();
+                heapBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+            return heapBuffer;
+        }
+
+        byte[] getStreamBuffer() {
+            if (streamBuffer == null) {
+                bufferAllocations.incrementAndGet();
+                streamBuffer = new byte[BUFFER_SIZE];
+            }
+            return streamBuffer;
+        }
+
+        byte[] getScratchBuffer() {
+            if (scratchBuffer == null) {
+                bufferAllocations.incrementAndGet();
+                scratchBuffer = new byte[SCRATCH_BUFFER_SIZE];
+            }
+            return scratchBuffer;
+        }
+    }
+
+}
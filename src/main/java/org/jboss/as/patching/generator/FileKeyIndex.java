@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the physical files of the processed distributions, based on the file keys (e.g. device and inode).
+ * <p/>
+ * Distributions are often created from each other with hard links (e.g. {@code cp -al} or {@code rsync --link-dest}),
+ * sharing most of their files. The first item of a physical file is hashed, all other items with the same file key
+ * reuse its hashes. Two items with the same file key are unchanged, without reading the content at all. Directories
+ * are keyed by the paths and file keys of all their entries, see {@link ContentStamp}.
+ * <p/>
+ * File systems without file keys (e.g. zip archives) are not indexed. The index is only used with
+ * {@code --hard-links}, since the stamps of the directories have to walk their whole tree, which does not pay off for
+ * distributions without hard links.
+ *
+ * @author agent
+ */
+class FileKeyIndex {
+
+    protected static volatile boolean enabled = false;
+
+    /**
+     * The index used when processing distributions, {@code null} if disabled.
+     */
+    static volatile FileKeyIndex current;
+
+    private final ConcurrentMap<String, DistributionItemFileImpl> items = new ConcurrentHashMap<String, DistributionItemFileImpl>();
+    private final AtomicLong shared = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+
+    /**
+     * Get the item which is hashed for the physical file of the given item.
+     *
+     * @param item the item
+     * @return the first indexed item with the same file key, the item itself if there is none
+     */
+    DistributionItemFileImpl getCanonical(final DistributionItemFileImpl item) {
+        if (item.getAttributes().fileKey() == null) {
+            return item;
+        }
+        final String key;
+        try {
+            key = item.getStamp().getFileKey();
+        } catch (IOException e) {
+            throw processingError(e, "failed to read the attributes of %s", item.getFileSystemPath());
+        }
+        if (key.isEmpty()) {
+            return item;
+        }
+        final DistributionItemFileImpl existing = items.putIfAbsent(key, item);
+        if (existing == null || existing == item) {
+            return item;
+        }
+        shared.incrementAndGet();
+        return existing;
+    }
+
+    /**
+     * Check whether two items are the same physical files.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     * @return {@code true} if both have the same file key
+     */
+    boolean isSameFile(final DistributionItemFileImpl original, final DistributionItemFileImpl updated) {
+        if (!hasSameFileKey(original, updated)) {
+            return false;
+        }
+        unchanged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Check whether two items are the same physical files, without counting it as a decided comparison.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     * @return {@code true} if both have the same file key
+     */
+    static boolean hasSameFileKey(final DistributionItemFileImpl original, final DistributionItemFileImpl updated) {
+        if (original.getAttributes().fileKey() == null || updated.getAttributes().fileKey() == null) {
+            return false;
+        }
+        try {
+            final String key = original.getStamp().getFileKey();
+            return !key.isEmpty() && key.equals(updated.getStamp().getFileKey());
+        } catch (IOException e) {
+            throw processingError(e, "failed to read the attributes of %s", updated.getFileSystemPath());
+        }
+    }
+
+    /**
+     * Print how many hashes and comparisons were saved, if any.
+     */
+    void report() {
+        if (shared.get() > 0 || unchanged.get() > 0) {
+            System.out.printf("INFO: %d items shared the hashes of the same physical file, %d comparisons decided by file keys%n",
+                    shared.get(), unchanged.get());
+        }
+    }
+
+}
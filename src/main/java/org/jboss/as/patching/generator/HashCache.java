@@ -0,0 +1,387 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache for the metadata and comparison hashes of distribution content, so that unchanged content
+ * (e.g. the base distribution between consecutive runs) does not have to be hashed again.
+ * <p/>
+ * Entries are keyed by the absolute path and validated against the {@link ContentStamp} of the content. The
+ * comparison hash is only reused if it was computed in the same comparison mode and with the same jar entries and
+ * manifest attributes ignored, see {@link JarDiffUtils#ignore(java.util.Collection, java.util.Collection)}.
+ * <p/>
+ * Additionally the entry hashes of jars are cached by a fingerprint of their central directory, so that the same jar
+ * (e.g. a third party library shipped unchanged in many releases) is only inflated once, wherever it is located. The
+ * raw hash of the jar is stored along with the entry hashes, to verify a hit.
+ * <p/>
+ * The cache is bounded by the number of entries, evicting the least recently used ones.
+ *
+ * @author agent
+ */
+class HashCache {
+
+    private static final int MAGIC = 0x50474843; // PGHC
+    // Bump whenever the way hashes are computed changes
+    private static final int VERSION = 6;
+
+    static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /**
+     * The cache used when hashing distribution content, {@code null} if disabled.
+     */
+    static volatile HashCache current;
+
+    private final File file;
+    private final Map<String, Entry> entries;
+    private final Map<String, JarEntries> jars;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong jarHits = new AtomicLong();
+    private final AtomicLong jarMisses = new AtomicLong();
+
+    private HashCache(final File file, final int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HashCache.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.jars = new LinkedHashMap<String, JarEntries>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JarEntries> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Load the cache, starting with an empty one if the file does not exist, has an incompatible format or cannot be
+     * read completely.
+     *
+     * @param file       the cache file
+     * @param maxEntries the maximum number of entries
+     * @return the cache
+     * @throws IOException
+     */
+    static HashCache load(final File file, final int maxEntries) throws IOException {
+        final HashCache cache = new HashCache(file, maxEntries);
+        if (!file.isFile()) {
+            return cache;
+        }
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+        try {
+            if (!cache.read(is)) {
+                System.out.printf("WARN: ignoring incompatible hash cache %s%n", file.getAbsolutePath());
+                return new HashCache(file, maxEntries);
+            }
+        } catch (IOException e) {
+            // e.g. truncated by an interrupted run, the file is replaced when storing the cache
+            System.out.printf("WARN: ignoring corrupt hash cache %s (%s)%n", file.getAbsolutePath(), e);
+            return new HashCache(file, maxEntries);
+        } finally {
+            is.close();
+        }
+        return cache;
+    }
+
+    /**
+     * Read the entries of the cache file.
+     *
+     * @param is the input
+     * @return {@code false} if the file has an incompatible format
+     * @throws IOException
+     */
+    private boolean read(final DataInputStream is) throws IOException {
+        if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+            return false;
+        }
+        // The metadata hashes do not depend on the ignored jar entries, only the comparison hashes do
+        final boolean sameIgnores = is.readUTF().equals(JarDiffUtils.getCustomIgnores());
+        if (!sameIgnores) {
+            System.out.printf("INFO: the ignored jar entries changed, dropping the comparison hashes of hash cache %s%n", file.getAbsolutePath());
+        }
+        final int count = is.readInt();
+        for (int i = 0; i < count; i++) {
+            final String key = is.readUTF();
+            final ContentStamp stamp = new ContentStamp(is.readLong(), is.readLong(), is.readLong(), is.readUTF());
+            final Entry entry = new Entry(stamp);
+            entry.metadataHash = readHash(is);
+            final byte comparisonMode = is.readByte();
+            final byte[] comparisonHash = readHash(is);
+            if (sameIgnores) {
+                entry.setComparisonHash(comparisonMode, comparisonHash);
+            }
+            this.entries.put(key, entry);
+        }
+        final int jarCount = is.readInt();
+        for (int i = 0; i < jarCount; i++) {
+            final String key = is.readUTF();
+            final byte[] rawHash = readHash(is);
+            final int length = is.readInt();
+            if (length < 0) {
+                throw new IOException("invalid length " + length);
+            }
+            final byte[] entries = new byte[length];
+            is.readFully(entries);
+            if (sameIgnores) {
+                jars.put(key, new JarEntries(rawHash, entries));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the cache back to disk. The file is replaced atomically.
+     *
+     * @throws IOException
+     */
+    void store() throws IOException {
+        final List<Map.Entry<String, Entry>> snapshot;
+        synchronized (entries) {
+            snapshot = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+        }
+        final List<Map.Entry<String, JarEntries>> jarSnapshot;
+        synchronized (jars) {
+            jarSnapshot = new ArrayList<Map.Entry<String, JarEntries>>(jars.entrySet());
+        }
+        final Path target = file.getAbsoluteFile().toPath();
+        final Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+        try {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeUTF(JarDiffUtils.getCustomIgnores());
+            os.writeInt(snapshot.size());
+            // Least recently used first, preserving the eviction order when loading again
+            for (final Map.Entry<String, Entry> mapEntry : snapshot) {
+                final Entry entry = mapEntry.getValue();
+                os.writeUTF(mapEntry.getKey());
+                os.writeLong(entry.stamp.getSize());
+                os.writeLong(entry.stamp.getLastModified());
+                os.writeLong(entry.stamp.getEntries());
+                os.writeUTF(entry.stamp.getFileKey());
+                writeHash(os, entry.metadataHash);
+                synchronized (entry) {
+                    os.writeByte(entry.comparisonMode);
+                    writeHash(os, entry.comparisonHash);
+                }
+            }
+            os.writeInt(jarSnapshot.size());
+            for (final Map.Entry<String, JarEntries> jar : jarSnapshot) {
+                os.writeUTF(jar.getKey());
+                writeHash(os, jar.getValue().rawHash);
+                os.writeInt(jar.getValue().entries.length);
+                os.write(jar.getValue().entries);
+            }
+        } finally {
+            os.close();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Get the cache entry for a path, which is either still valid or a fresh one replacing the outdated entry.
+     *
+     * @param path  the path
+     * @param stamp the current stamp of the path
+     * @return the entry
+     * @throws IOException
+     */
+    Entry getEntry(final Path path, final ContentStamp stamp) throws IOException {
+        final String key = getKey(path);
+        synchronized (entries) {
+            final Entry existing = entries.get(key);
+            if (existing != null && existing.stamp.equals(stamp)) {
+                return existing;
+            }
+            final Entry entry = new Entry(stamp);
+            entries.put(key, entry);
+            return entry;
+        }
+    }
+
+    byte[] getMetadataHash(final Entry entry) {
+        final byte[] hash = entry.metadataHash;
+        record(hash != null);
+        return hash;
+    }
+
+    byte[] getComparisonHash(final Entry entry, final byte mode) {
+        final byte[] hash = entry.getComparisonHash(mode);
+        record(hash != null);
+        return hash;
+    }
+
+    /**
+     * Get the raw hash of a jar with cached entry hashes, which needs to be verified before using them.
+     *
+     * @param key the fingerprint of the central directory of the jar, including the comparison mode
+     * @return the raw hash, {@code null} if unknown
+     */
+    byte[] getJarRawHash(final String key) {
+        final JarEntries jar;
+        synchronized (jars) {
+            jar = jars.get(key);
+        }
+        if (jar == null) {
+            jarMisses.incrementAndGet();
+            return null;
+        }
+        return jar.rawHash;
+    }
+
+    /**
+     * Get the entry hashes of a jar.
+     *
+     * @param key     the fingerprint of the central directory of the jar, including the comparison mode
+     * @param rawHash the raw hash of the jar
+     * @return the entry hashes, as fed to the jar digest, {@code null} if unknown or cached for different content
+     */
+    byte[] getJarEntries(final String key, final byte[] rawHash) {
+        final JarEntries jar;
+        synchronized (jars) {
+            jar = jars.get(key);
+        }
+        if (jar != null && Arrays.equals(jar.rawHash, rawHash)) {
+            jarHits.incrementAndGet();
+            return jar.entries;
+        }
+        jarMisses.incrementAndGet();
+        return null;
+    }
+
+    void putJarEntries(final String key, final byte[] rawHash, final byte[] entries) {
+        synchronized (jars) {
+            jars.put(key, new JarEntries(rawHash, entries));
+        }
+    }
+
+    /**
+     * Print the hit ratio for this run.
+     */
+    void report() {
+        final long hit = hits.get();
+        final long total = hit + misses.get();
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        System.out.printf("INFO: hash cache %d hits, %d misses (%.1f%% hit ratio), %d entries%n",
+                hit, total - hit, total == 0 ? 0.0 : hit * 100.0 / total, size);
+        final int jarSize;
+        synchronized (jars) {
+            jarSize = jars.size();
+        }
+        System.out.printf("INFO: jar cache %d hits, %d misses, %d entries%n", jarHits.get(), jarMisses.get(), jarSize);
+    }
+
+    private void record(final boolean hit) {
+        if (hit) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+    }
+
+    static String getKey(final Path path) {
+        if (DistributionArchive.isLocal(path)) {
+            // Resolving symbolic links would cost another file system call per lookup, the stamp covers a changed target
+            return path.toAbsolutePath().normalize().toString();
+        }
+        // Includes the location of the archive
+        return path.toUri().toString();
+    }
+
+    private static byte[] readHash(final DataInputStream is) throws IOException {
+        final int length = is.readShort();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] hash = new byte[length];
+        is.readFully(hash);
+        return hash;
+    }
+
+    private static void writeHash(final DataOutputStream os, final byte[] hash) throws IOException {
+        if (hash == null) {
+            os.writeShort(-1);
+        } else {
+            os.writeShort(hash.length);
+            os.write(hash);
+        }
+    }
+
+    static class Entry {
+
+        private final ContentStamp stamp;
+        private volatile byte[] metadataHash;
+        private byte comparisonMode;
+        private byte[] comparisonHash;
+
+        Entry(ContentStamp stamp) {
+            this.stamp = stamp;
+        }
+
+        void setMetadataHash(byte[] metadataHash) {
+            this.metadataHash = metadataHash;
+        }
+
+        synchronized byte[] getComparisonHash(byte mode) {
+            return comparisonMode == mode ? comparisonHash : null;
+        }
+
+        synchronized void setComparisonHash(byte mode, byte[] comparisonHash) {
+            this.comparisonMode = mode;
+            this.comparisonHash = comparisonHash;
+        }
+    }
+
+    private static class JarEntries {
+
+        private final byte[] rawHash;
+        private final byte[] entries;
+
+        JarEntries(byte[] rawHash, byte[] entries) {
+            this.rawHash = rawHash;
+            this.entries = entries;
+        }
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged hashing of distribution content, separating the reads from the digest calculation.
+ * <p/>
+ * A fixed number of reader threads, sized for the storage, read the content in chunks. The chunks are digested on the
+ * CPU executor, usually the pool processing the distributions. The chunks come from a bounded set of buffers, so the
+ * readers block if the digests fall behind, instead of reading ahead without limit. The chunks of one item are
+ * digested in order, while different items are digested in parallel.
+ * <p/>
+ * Only plain content hashes are calculated, the resulting hash is
+ * {@link DistributionContentItem#populateHashes(byte[], byte[]) populated} to the content item.
+ *
+ * @author agent
+ */
+class HashPipeline {
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final ExecutorService readers;
+    private final Executor digests;
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final Map<ContentDigest.Algorithm, Queue<ContentDigest>> digestPool =
+            new EnumMap<ContentDigest.Algorithm, Queue<ContentDigest>>(ContentDigest.Algorithm.class);
+
+    /**
+     * Create the pipeline.
+     *
+     * @param readerThreads the number of reader threads
+     * @param digests       the executor calculating the digests
+     * @param digestThreads the number of threads of the digest executor, to size the buffers
+     */
+    HashPipeline(final int readerThreads, final Executor digests, final int digestThreads) {
+        this.readers = Executors.newFixedThreadPool(readerThreads);
+        this.digests = digests;
+        // Enough buffers to keep every reader and digest thread busy, with some room for the queues in between
+        final int capacity = 2 * (readerThreads + digestThreads);
+        this.buffers = new ArrayBlockingQueue<ByteBuffer>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            buffers.add(ByteBuffer.allocate(CHUNK_SIZE));
+        }
+        for (final ContentDigest.Algorithm algorithm : ContentDigest.Algorithm.values()) {
+            digestPool.put(algorithm, new ConcurrentLinkedQueue<ContentDigest>());
+        }
+    }
+
+    /**
+     * Start a new batch, e.g. for every distribution.
+     *
+     * @return the batch
+     */
+    Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Stop the reader threads.
+     */
+    void shutdown() {
+        readers.shutdownNow();
+    }
+
+    ContentDigest acquireDigest(final ContentDigest.Algorithm algorithm) {
+        final ContentDigest digest = digestPool.get(algorithm).poll();
+        return digest != null ? digest : algorithm.create();
+    }
+
+    private void releaseDigest(final ContentDigest.Algorithm algorithm, final ContentDigest digest) {
+        digest.reset();
+        digestPool.get(algorithm).add(digest);
+    }
+
+    /**
+     * A set of hashing jobs, which can be waited for.
+     */
+    class Batch {
+
+        private int pending;
+        private Exception failure;
+
+        /**
+         * Hash the item, a file or directory. Directories are hashed like {@code FileHashUtils.hashFile()}.
+         *
+         * @param item       the item
+         * @param algorithm  the algorithm
+         * @param comparison whether to populate the comparison hash
+         * @param metadata   whether to populate the metadata hash
+         */
+        void submit(final DistributionItemFileImpl item, final ContentDigest.Algorithm algorithm, final boolean comparison, final boolean metadata) {
+            synchronized (this) {
+                pending++;
+            }
+            readers.execute(new Job(this, item, algorithm, comparison, metadata));
+        }
+
+        /**
+         * Wait for all submitted items.
+         */
+        void await() {
+            synchronized (this) {
+                try {
+                    while (pending > 0) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw processingError(e, "interrupted while hashing");
+                }
+                if (failure != null) {
+                    throw processingError(failure, "failed to generate hash");
+                }
+            }
+        }
+
+        synchronized void done(final Exception e) {
+            if (e != null && failure == null) {
+                failure = e;
+            }
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Reads an item and digests the chunks on the digest executor. The reader hands the chunks over through a queue,
+     * the digest stage is scheduled whenever the queue becomes non-empty.
+     */
+    private class Job implements Runnable {
+
+        private final Batch batch;
+        private final DistributionItemFileImpl item;
+        private final ContentDigest.Algorithm algorithm;
+        private final boolean comparison;
+        private final boolean metadata;
+        private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicInteger queued = new AtomicInteger();
+        // Only acquired once the digest stage runs, the reader queue is not bounded
+        private ContentDigest digest;
+        private volatile Exception failure;
+
+        Job(Batch batch, DistributionItemFileImpl item, ContentDigest.Algorithm algorithm, boolean comparison, boolean metadata) {
+            this.batch = batch;
+            this.item = item;
+            this.algorithm = algorithm;
+            this.comparison = comparison;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public void run() {
+            try {
+                read(item.getFileSystemPath(), item.isDirectory());
+            } catch (Exception e) {
+                failure = e;
+            }
+            offer(END);
+        }
+
+        private void read(final Path path, final boolean directory) throws IOException, InterruptedException {
+            if (directory) {
+                for (final Map.Entry<Path, BasicFileAttributes> child : DistributionProcessor.listEntries(path).entrySet()) {
+                    read(child.getKey(), child.getValue().isDirectory());
+                }
+            } else {
+                final SeekableByteChannel channel = Files.newByteChannel(path);
+                try {
+                    while (true) {
+                        final ByteBuffer buffer = buffers.take();
+                        buffer.clear();
+                        final int l;
+                        try {
+                            l = fill(channel, buffer);
+                        } catch (IOException e) {
+                            buffers.add(buffer);
+                            throw e;
+                        }
+                        if (l == 0) {
+                            buffers.add(buffer);
+                            break;
+                        }
+                        buffer.flip();
+                        offer(buffer);
+                    }
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+
+        private int fill(final SeekableByteChannel channel, final ByteBuffer buffer) throws IOException {
+            int total = 0;
+            while (buffer.hasRemaining()) {
+                final int l = channel.read(buffer);
+                if (l == -1) {
+                    break;
+                }
+                total += l;
+            }
+            return total;
+        }
+
+        private void offer(final ByteBuffer chunk) {
+            chunks.add(chunk);
+            if (queued.getAndIncrement() == 0) {
+                digests.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        digest();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Digest the queued chunks, only ever running on one thread at a time for a job. A failure is recorded and
+         * the remaining chunks are still drained, so that the job completes and the buffers are returned.
+         */
+        private void digest() {
+            do {
+                final ByteBuffer chunk = chunks.poll();
+                if (chunk == END) {
+                    complete();
+                } else {
+                    try {
+                        if (failure == null) {
+                            getDigest().update(chunk);
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    } finally {
+                        buffers.add(chunk);
+                    }
+                }
+            } while (queued.decrementAndGet() > 0);
+        }
+
+        private ContentDigest getDigest() {
+            if (digest == null) {
+                digest = acquireDigest(algorithm);
+            }
+            return digest;
+        }
+
+        private void complete() {
+            Exception e = failure;
+            try {
+                if (e == null) {
+                    final byte[] hash = getDigest().digest();
+                    item.completeHashes(comparison ? hash : null, metadata ? hash : null);
+                }
+            } catch (RuntimeException re) {
+                e = re;
+            } finally {
+                if (digest != null) {
+                    releaseDigest(algorithm, digest);
+                }
+                batch.done(e);
+            }
+        }
+    }
+
+}
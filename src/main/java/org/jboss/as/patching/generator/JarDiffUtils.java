@@ -1,48 +1,126 @@
 package org.jboss.as.patching.generator;
 
+import static org.jboss.as.patching.generator.PatchGenerator.processingError;
+
 import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.jboss.as.patching.HashUtils;
 
 /**
  * @author Emanuel Muckenhuber
  */
 class JarDiffUtils {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private static final boolean USE_METADATA_HASH = Boolean.getBoolean("patch.gen.use.metadata.hash");
+    private static final int MISC_JARS = 1 << 5;
+    private static final int CUSTOM_IGNORES = 1 << 6;
+
+    // The end of central directory record, without the comment
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_RECORD_SIZE = 22;
+
+    // Number of entries hashed by a single task, when hashing the entries in parallel
+    private static final int ENTRIES_PER_TASK = 64;
+
+    /**
+     * Jars with at least this many entries are hashed in parallel, {@code 0} to always hash them sequentially. Jars
+     * are still hashed sequentially if their raw content is digested in the same pass.
+     */
+    protected static volatile int parallelEntries = 0;
+
+    /**
+     * The pool hashing the entries in parallel, unless already running within a fork join pool.
+     */
+    static volatile ForkJoinPool pool;
+
+    // Ignored entries, since they usually change through a rebuild
+    private static final List<String> DEFAULT_IGNORED_ENTRIES = Arrays.asList(
+            // information added by jarsigner
+            "META-INF/**.SF", "META-INF/**.DSA", "META-INF/INDEX.LIST",
+            // timestamped maven artifacts
+            "META-INF/maven/**/pom.properties", "META-INF/maven/**/pom.xml", "META-INF/maven/**/effective-pom.xml",
+            // generated logger and bundle, since the created classes are not consistent
+            "**_$bundle.class", "**_$logger.class", "**_$bundle_**.class", "**_$logger_**.class");
 
     // Ignored manifest attributes
-    private static final Set<String> ignoredManifestAttributes = new HashSet<>();
-    static {
+    private static final List<String> DEFAULT_IGNORED_MANIFEST_ATTRIBUTES = Arrays.asList(
+            "Archiver-Version", "Bnd-LastModified", "Built-By", "Build-Jdk", "Build-Timestamp", "Created-By",
+            "Implementation-Version", "Java-Vendor", "Java-Version", "JBossAS-Release-Version", "Os-Arch", "Os-Name",
+            "Os-Version", "Scm-Revision", "Specification-Version");
+
+    private static volatile NameMatcher ignoredEntries = new NameMatcher(DEFAULT_IGNORED_ENTRIES);
+    private static volatile NameMatcher ignoredManifestAttributes = new NameMatcher(DEFAULT_IGNORED_MANIFEST_ATTRIBUTES);
+    private static volatile String customIgnores = "";
+
+    /**
+     * Ignore additional jar entries and manifest attributes, on top of the default ones.
+     *
+     * @param entries    globs of the ignored entry names, see {@link NameMatcher}
+     * @param attributes globs of the ignored main attributes of the manifest
+     */
+    static synchronized void ignore(final Collection<String> entries, final Collection<String> attributes) {
+        final List<String> allEntries = new ArrayList<>(DEFAULT_IGNORED_ENTRIES);
+        allEntries.addAll(entries);
+        final List<String> allAttributes = new ArrayList<>(DEFAULT_IGNORED_MANIFEST_ATTRIBUTES);
+        allAttributes.addAll(attributes);
+        ignoredEntries = new NameMatcher(allEntries);
+        ignoredManifestAttributes = new NameMatcher(allAttributes);
+        customIgnores = entries.isEmpty() && attributes.isEmpty() ? "" : new NameMatcher(entries) + ";" + new NameMatcher(attributes);
+    }
 
-        ignoredManifestAttributes.add("Archiver-Version");
-        ignoredManifestAttributes.add("Bnd-LastModified");
-        ignoredManifestAttributes.add("Built-By");
-        ignoredManifestAttributes.add("Build-Jdk");
-        ignoredManifestAttributes.add("Build-Timestamp");
-        ignoredManifestAttributes.add("Created-By");
-        ignoredManifestAttributes.add("Implementation-Version");
-        ignoredManifestAttributes.add("Java-Vendor");
-        ignoredManifestAttributes.add("Java-Version");
-        ignoredManifestAttributes.add("JBossAS-Release-Version");
-        ignoredManifestAttributes.add("Os-Arch");
-        ignoredManifestAttributes.add("Os-Name");
-        ignoredManifestAttributes.add("Os-Version");
-        ignoredManifestAttributes.add("Scm-Revision");
-        ignoredManifestAttributes.add("Specification-Version");
+    /**
+     * Get the additionally ignored entries and manifest attributes, which affect the comparison hashes beyond the
+     * {@link #getComparisonMode() comparison mode}.
+     *
+     * @return a description of the additional rules, empty if only the default ones apply
+     */
+    static String getCustomIgnores() {
+        return customIgnores;
+    }
 
+    /**
+     * Get the mode affecting the comparison hashes calculated by {@link #calculateHash(Path, DistributionContentItem)}.
+     *
+     * @return the comparison mode
+     */
+    static byte getComparisonMode() {
+        // Jars in the misc tree are normalized as well, unlike in earlier snapshots and hash caches
+        return (byte) ((USE_METADATA_HASH ? 1 : 0) | (ModuleDiffUtils.deepInspection ? 2 : 0) | ContentDigest.comparison.ordinal() << 2 | MISC_JARS
+                | (customIgnores.isEmpty() ? 0 : CUSTOM_IGNORES));
     }
 
     /**
@@ -54,76 +132,441 @@ class JarDiffUtils {
      * @throws NoSuchAlgorithmException
      * @throws IOException
      */
-    public static byte[] calculateHash(final File root, final DistributionContentItem item) throws NoSuchAlgorithmException, IOException {
+    public static byte[] calculateHash(final Path root, final DistributionContentItem item) throws NoSuchAlgorithmException, IOException {
         if (USE_METADATA_HASH) {
             return item.getMetadataHash();
         } else {
 
-            final File moduleXml = new File(root, "module.xml");
-            if (moduleXml.exists()) {
-                return ModuleDiffUtils.processModule(root, item.getParent().getPath('.'), item.getMetadataHash());
-            } else if (root.getName().equals(".jar")) {
+            // Only directories can be modules
+            if (!item.isLeaf() && Files.exists(root.resolve("module.xml"))) {
+                // The content hash is only used without detailed inspection
+                if (!ModuleDiffUtils.deepInspection) {
+                    return calculateContentHash(root, item);
+                }
+                return ModuleDiffUtils.processModule(root, getModuleXml(root, item), null);
+            } else if (item.isLeaf() && isJar(root)) {
                 return internalJarComparison(root);
             } else {
-                return item.getMetadataHash();
+                return calculateContentHash(root, item);
             }
         }
     }
 
-    public static byte[] internalJarComparison(final File file) throws NoSuchAlgorithmException, IOException {
-        // TODO: make the algorithm choice configurable
-        final MessageDigest jarDigest = MessageDigest.getInstance("SHA1");
-        internalJarComparison(file, jarDigest, true);
-        return jarDigest.digest();
+    /**
+     * Calculate the comparison hash and, if requested, also the metadata hash where the content has to be read for the
+     * comparison anyway. This is the case for jars and for modules with detailed inspection, where the raw bytes are
+     * digested while being parsed instead of reading the content a second time.
+     * <p/>
+     * This is only done when comparing with SHA-1. A faster comparison algorithm is chosen to avoid SHA-1 for unchanged
+     * content, so the metadata hash is calculated on demand for the content ending up in the patch.
+     *
+     * @param root     the file system path
+     * @param item     the content item
+     * @param metadata whether the metadata hash is still needed
+     * @return the comparison hash, followed by the metadata hash or {@code null} if it was not calculated
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     */
+    static byte[][] calculateHashes(final Path root, final DistributionContentItem item, final boolean metadata) throws NoSuchAlgorithmException, IOException {
+        if (metadata && !USE_METADATA_HASH && ContentDigest.comparison == ContentDigest.Algorithm.SHA1) {
+            if (!item.isLeaf() && ModuleDiffUtils.deepInspection && Files.exists(root.resolve("module.xml"))) {
+                final ContentDigest metadataDigest = FileHashUtils.acquireDigest(ContentDigest.Algorithm.SHA1);
+                try {
+                    final byte[] comparisonHash = ModuleDiffUtils.processModule(root, getModuleXml(root, item), metadataDigest);
+                    return new byte[][] { comparisonHash, metadataDigest.digest() };
+                } finally {
+                    FileHashUtils.releaseDigest(ContentDigest.Algorithm.SHA1, metadataDigest);
+                }
+            } else if (item.isLeaf() && isJar(root)) {
+                final ContentDigest jarDigest = FileHashUtils.acquireDigest(ContentDigest.Algorithm.SHA1);
+                final ContentDigest metadataDigest = FileHashUtils.acquireDigest(ContentDigest.Algorithm.SHA1);
+                try {
+                    internalJarComparison(root, jarDigest, metadataDigest);
+                    return new byte[][] { jarDigest.digest(), metadataDigest.digest() };
+                } finally {
+                    FileHashUtils.releaseDigest(ContentDigest.Algorithm.SHA1, jarDigest);
+                    FileHashUtils.releaseDigest(ContentDigest.Algorithm.SHA1, metadataDigest);
+                }
+            }
+        }
+        return new byte[][] { calculateHash(root, item), null };
+    }
+
+    /**
+     * Get the algorithm of plain comparison hashes, which are calculated by hashing the content.
+     *
+     * @return the algorithm
+     */
+    static ContentDigest.Algorithm getContentAlgorithm() {
+        return USE_METADATA_HASH ? ContentDigest.Algorithm.SHA1 : ContentDigest.comparison;
+    }
+
+    /**
+     * Hash the plain content using the comparison algorithm. This is the metadata hash for SHA-1, which avoids hashing
+     * the same content twice.
+     */
+    private static byte[] calculateContentHash(final Path root, final DistributionContentItem item) throws IOException {
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        if (algorithm == ContentDigest.Algorithm.SHA1) {
+            return item.getMetadataHash();
+        }
+        return FileHashUtils.hashFile(root, algorithm);
+    }
+
+    /**
+     * Whether the comparison hash calculated by {@link #calculateHash(Path, DistributionContentItem)} is a plain hash
+     * of the content, so that different content always results in a different hash.
+     *
+     * @param root the file system path
+     * @param item the content item
+     * @return {@code true} if different content always results in a different comparison hash
+     */
+    static boolean isRawComparison(final Path root, final DistributionContentItem item) {
+        if (!item.isLeaf() && Files.exists(root.resolve("module.xml"))) {
+            return isRawModuleComparison();
+        } else {
+            return isRawLeafComparison(root.getFileName().toString());
+        }
+    }
+
+    /**
+     * Get the parsed module.xml of a module, reusing the result of parsing it while processing the distribution.
+     *
+     * @param root the module root
+     * @param item the module item
+     * @return the parsed module.xml
+     * @throws IOException
+     */
+    private static ModuleDiffUtils.ModuleXml getModuleXml(final Path root, final DistributionContentItem item) throws IOException {
+        if (item instanceof DistributionItemFileImpl) {
+            return ((DistributionItemFileImpl) item).getModuleXml();
+        }
+        return ModuleDiffUtils.parseModuleXml(root.resolve("module.xml"));
+    }
+
+    /**
+     * Whether the comparison hash of a module is a plain hash of the module directory.
+     *
+     * @return {@code true} unless modules are inspected in detail
+     */
+    static boolean isRawModuleComparison() {
+        return USE_METADATA_HASH || !ModuleDiffUtils.deepInspection;
+    }
+
+    /**
+     * Whether the comparison hash of a file is a plain hash of its content, which only depends on the name and is
+     * therefore the same for file and snapshot based items.
+     *
+     * @param name the file name
+     * @return {@code true} unless the content is normalized for the comparison
+     */
+    static boolean isRawLeafComparison(final String name) {
+        return USE_METADATA_HASH || !isJar(name);
+    }
+
+    private static boolean isJar(final Path root) {
+        return isJar(root.getFileName().toString());
+    }
+
+    /**
+     * Whether a file is compared as jar, ignoring the differences of a rebuild. This only depends on the name, so that
+     * file and snapshot based items are compared the same way. Files which turn out not to be zips are compared by
+     * their raw content, see {@link #internalJarComparison(Path)}.
+     *
+     * @param name the file name
+     * @return {@code true} for jars
+     */
+    static boolean isJar(final String name) {
+        return name.endsWith(".jar");
+    }
+
+    public static byte[] internalJarComparison(final Path file) throws NoSuchAlgorithmException, IOException {
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest jarDigest = FileHashUtils.acquireDigest(algorithm);
+        try {
+            internalJarComparison(file, jarDigest);
+            return jarDigest.digest();
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, jarDigest);
+        }
     }
 
     /**
      * Internally compare a .jar file, trying to ignore things that usually change through a rebuild.
      *
-     * @param file      the jar file
-     * @param jarDigest the message jar message digest
+     * @param file           the jar file
+     * @param jarDigest      the jar digest, using the comparison algorithm
+     * @param contentDigests digests fed with the raw content of the jar file in the same pass
      * @throws NoSuchAlgorithmException
      * @throws IOException
      */
-    public static void internalJarComparison(final File file, final MessageDigest jarDigest, boolean debug) throws NoSuchAlgorithmException, IOException {
+    public static void internalJarComparison(final Path file, final ContentDigest jarDigest, final ContentDigest... contentDigests) throws NoSuchAlgorithmException, IOException {
+        final HashCache cache = HashCache.current;
+        if (cache != null) {
+            internalJarComparison(cache, file, jarDigest, contentDigests);
+        } else {
+            hashJar(file, jarDigest, contentDigests);
+        }
+    }
+
+    /**
+     * Look up the entry hashes of a jar by the fingerprint of its central directory, so that the same jar is only
+     * inflated once, even across distributions and runs. A hit is verified by the raw hash of the jar, which is read
+     * without inflating anything. On a miss the raw hash is calculated in the same pass as the entry hashes. Reading
+     * the raw content also feeds the content digests.
+     */
+    private static void internalJarComparison(final HashCache cache, final Path file, final ContentDigest jarDigest,
+                                              final ContentDigest[] contentDigests) throws IOException {
+        final String key = getJarKey(file);
+        if (key == null) {
+            // Only local zips provide the central directory up front
+            hashJar(file, jarDigest, contentDigests);
+            return;
+        }
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest raw = FileHashUtils.acquireDigest(algorithm);
+        try {
+            final ContentDigest[] digests = Arrays.copyOf(contentDigests, contentDigests.length + 1);
+            digests[contentDigests.length] = raw;
+            if (cache.getJarRawHash(key) != null) {
+                FileHashUtils.updateDigests(file, digests);
+                final byte[] rawHash = raw.digest();
+                final byte[] entries = cache.getJarEntries(key, rawHash);
+                if (entries != null) {
+                    jarDigest.update(entries);
+                    return;
+                }
+                // Same central directory, but different content, e.g. the zip comment
+                final ContentDigest.RecordingDigest recording = new ContentDigest.RecordingDigest();
+                hashJar(file, recording);
+                cacheJarEntries(cache, key, rawHash, recording.digest(), jarDigest);
+            } else {
+                final ContentDigest.RecordingDigest recording = new ContentDigest.RecordingDigest();
+                hashJar(file, recording, digests);
+                cacheJarEntries(cache, key, raw.digest(), recording.digest(), jarDigest);
+            }
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, raw);
+        }
+    }
+
+    private static void cacheJarEntries(final HashCache cache, final String key, final byte[] rawHash, final byte[] entries,
+                                        final ContentDigest jarDigest) {
+        cache.putJarEntries(key, rawHash, entries);
+        jarDigest.update(entries);
+    }
+
+    /**
+     * Get the fingerprint of the central directory of a jar, including the comparison mode. The same content always
+     * has the same fingerprint, so it is used to look up the cached entry hashes before reading the whole jar.
+     * <p/>
+     * The central directory is digested as stored, covering the names, checksums, sizes and raw DOS times of all
+     * entries. Unlike {@link ZipEntry#getTime()} this does not depend on the default time zone, and does not need to
+     * decode the entries at all.
+     *
+     * @param file the jar
+     * @return the fingerprint, {@code null} if the jar is not a local zip
+     * @throws IOException
+     */
+    static String getJarKey(final Path file) throws IOException {
+        if (!DistributionArchive.isLocal(file)) {
+            return null;
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            // The end of central directory record is followed by a comment of up to 64k
+            final int length = (int) Math.min(size, END_RECORD_SIZE + 0xFFFF);
+            final ByteBuffer tail = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tail, size - length);
+            int end = -1;
+            for (int i = length - END_RECORD_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE && i + END_RECORD_SIZE + (tail.getShort(i + 20) & 0xFFFF) == length) {
+                    end = i;
+                    break;
+                }
+            }
+            if (end == -1) {
+                // Not a zip
+                return null;
+            }
+            final long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            final long directoryEnd = size - length + end;
+            if (directorySize > directoryEnd) {
+                // Zip64 or corrupt, hashed without a fingerprint
+                return null;
+            }
+            final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+            final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(FileHashUtils.getBuffer());
+                for (long position = directoryEnd - directorySize; position < directoryEnd; ) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), directoryEnd - position));
+                    readFully(channel, buffer, position);
+                    position += buffer.limit();
+                    buffer.flip();
+                    digest.update(buffer);
+                }
+                return getComparisonMode() + ":" + HashUtils.bytesToHexString(digest.digest()) + ":" + size;
+            } finally {
+                FileHashUtils.releaseDigest(algorithm, digest);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int l = channel.read(buffer, current);
+            if (l == -1) {
+                throw new EOFException(channel.toString());
+            }
+            current += l;
+        }
+    }
+
+    private static void hashJar(final Path file, final ContentDigest jarDigest, final ContentDigest... contentDigests) throws IOException {
+        // Reading the entries randomly would need another pass for the raw content, which the stream gets in one
+        if (parallelEntries > 0 && contentDigests.length == 0 && hashEntriesParallel(file, jarDigest)) {
+            return;
+        }
         final TreeSet<Entry> entries = new TreeSet<>();
-        final MessageDigest digest = MessageDigest.getInstance("SHA1");
-        final JarInputStream in = new JarInputStream(new BufferedInputStream(new FileInputStream(file)));
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+        try {
+            if (!hashEntries(file, digest, contentDigests, entries)) {
+                // Not a zip or an empty one, an empty list of entries would make all such files equal
+                digest.reset();
+                FileHashUtils.updateDigests(file, digest);
+                jarDigest.update(digest.digest());
+                return;
+            }
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, digest);
+        }
+        // Add the hashes to the jarDigest
+        for (final Entry entry : entries) {
+            final byte[] hash = entry.getHash();
+            if (hash != null) {
+                jarDigest.update(hash);
+            }
+        }
+    }
+
+    /**
+     * Hash the entries of a large jar in parallel, reading them from the central directory. The entry hashes are
+     * added in the same order as by the sequential {@link #hashEntries}, so the resulting hash is the same.
+     *
+     * @return {@code false} if the jar needs to be hashed sequentially
+     */
+    private static boolean hashEntriesParallel(final Path file, final ContentDigest jarDigest) throws IOException {
+        final ForkJoinPool pool = JarDiffUtils.pool;
+        if (!DistributionArchive.isLocal(file) || (pool == null && !ForkJoinTask.inForkJoinPool())) {
+            return false;
+        }
+        final ZipFile zip;
+        try {
+            zip = new ZipFile(file.toFile());
+        } catch (ZipException e) {
+            // Not a zip, which is hashed by its raw content
+            return false;
+        }
+        try {
+            if (zip.size() < parallelEntries) {
+                return false;
+            }
+            final CentralDirectory directory = new CentralDirectory(zip);
+            final TreeMap<String, ZipEntry> sorted = new TreeMap<>(directory.entries);
+            final ZipEntry[] entries = sorted.values().toArray(new ZipEntry[sorted.size()]);
+            // The position of the manifest, which is normalized before hashing
+            final int manifest = directory.manifest ? sorted.headMap(JarFile.MANIFEST_NAME).size() : -1;
+            final EntryTask task = new EntryTask(zip, entries, manifest, new byte[entries.length][], 0, entries.length);
+            if (ForkJoinTask.inForkJoinPool()) {
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+            for (final byte[] hash : task.hashes) {
+                jarDigest.update(hash);
+            }
+            return true;
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Hashes a range of the entries, splitting it in halves until it is small enough.
+     */
+    private static class EntryTask extends RecursiveAction {
+
+        private final ZipFile zip;
+        private final ZipEntry[] entries;
+        private final int manifest;
+        private final byte[][] hashes;
+        private final int from;
+        private final int to;
+
+        EntryTask(ZipFile zip, ZipEntry[] entries, int manifest, byte[][] hashes, int from, int to) {
+            this.zip = zip;
+            this.entries = entries;
+            this.manifest = manifest;
+            this.hashes = hashes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ENTRIES_PER_TASK) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new EntryTask(zip, entries, manifest, hashes, from, middle),
+                        new EntryTask(zip, entries, manifest, hashes, middle, to));
+                return;
+            }
+            final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+            final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+            try {
+                for (int i = from; i < to; i++) {
+                    hashes[i] = hashEntry(zip, entries[i], i == manifest, digest);
+                }
+            } catch (IOException e) {
+                throw processingError(e, "failed to process %s", zip.getName());
+            } finally {
+                FileHashUtils.releaseDigest(algorithm, digest);
+            }
+        }
+    }
+
+    /**
+     * Hash the entries of a jar, reading it as stream.
+     *
+     * @return {@code false} if the jar does not contain any entries, e.g. because it is not a zip at all
+     */
+    private static boolean hashEntries(final Path file, final ContentDigest digest, final ContentDigest[] contentDigests,
+                                       final TreeSet<Entry> entries) throws IOException {
+        final byte[] buf = FileHashUtils.getBuffer();
+        boolean found = false;
+        final ContentDigest.DigestInputStream raw = contentDigests.length == 0 ? null
+                : new ContentDigest.DigestInputStream(Files.newInputStream(file), contentDigests);
+        final JarInputStream in = new JarInputStream(new BufferedInputStream(raw == null ? Files.newInputStream(file) : raw));
         try {
             JarEntry entry;
             while ((entry = in.getNextJarEntry()) != null) {
+                found = true;
                 // do not hash directories
                 if (entry.isDirectory()) {
                     continue;
                 }
                 final String name = entry.getName();
-                // do not hash information added by jarsigner
-                if (name.startsWith("META-INF/")) {
-                    if (name.endsWith(".SF") || name.endsWith(".DSA"))
-                        continue;
-                }
-                if (name.equals("META-INF/INDEX.LIST")) {
+                if (isIgnoredEntry(name)) {
                     continue;
                 }
-                // do not hash timestamped maven artifacts
-                // TODO: make this optional, enabled by default
-                if (name.startsWith("META-INF/maven/")) {
-                    if (name.endsWith("/pom.properties")
-                            || name.endsWith("/pom.xml")
-                            || name.endsWith("/effective-pom.xml")) {
-                        continue;
-                    }
-                }
-                // Ignore generated logger and bundle, since the created classes are not consistent
-                if (name.endsWith(".class")) {
-                    if (name.endsWith("_$bundle.class") || name.endsWith("_$logger.class")
-                            || name.contains("_$bundle_") || name.contains("_$logger_")) {
-                        continue;
-                    }
-                }
 
                 digest.reset();
-                final byte[] buf = new byte[4096];
                 int l;
                 while ((l = in.read(buf)) > 0) {
                     digest.update(buf, 0, l);
@@ -132,6 +575,10 @@ class JarDiffUtils {
                 // Add to ordered set
                 entries.add(new Entry(name, d));
             }
+            if (raw != null) {
+                // The central directory is not read by the stream
+                raw.drain();
+            }
         } finally {
             in.close();
         }
@@ -139,25 +586,289 @@ class JarDiffUtils {
         // Process the manifest if there is any
         final Manifest manifest =  in.getManifest();
         if (manifest != null) {
-            digest.reset();
-            final Attributes attributes = manifest.getMainAttributes();
-            for (final Map.Entry<Object, Object> entry : attributes.entrySet()) {
-                final String name = entry.getKey().toString();
-                // Ignore attributes that change with every rebuild
-                if (! ignoredManifestAttributes.contains(name)) {
-                    final String value = (String) entry.getValue();
-                    digest.update(name.getBytes());
-                    digest.update(value.getBytes());
+            // Add the manifest
+            entries.add(new Entry(JarFile.MANIFEST_NAME, hashManifest(manifest, digest)));
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Whether a jar entry is not hashed, since it usually changes through a rebuild or is configured to be ignored.
+     *
+     * @param name the entry name
+     * @return {@code true} if the entry is ignored
+     */
+    private static boolean isIgnoredEntry(final String name) {
+        return ignoredEntries.matches(name);
+    }
+
+    private static byte[] hashManifest(final Manifest manifest, final ContentDigest digest) {
+        digest.reset();
+        final Attributes attributes = manifest.getMainAttributes();
+        for (final Map.Entry<Object, Object> entry : attributes.entrySet()) {
+            final String name = entry.getKey().toString();
+            // Ignore attributes that change with every rebuild
+            if (! ignoredManifestAttributes.matches(name)) {
+                final String value = (String) entry.getValue();
+                digest.update(name.getBytes());
+                digest.update(value.getBytes());
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Compare two content items based on their content, rather than their comparison hashes. This avoids inflating
+     * and hashing every entry of jars, which mostly only change in a few entries, see {@link #compareJars(Path, Path)}.
+     *
+     * @param original the original item
+     * @param updated  the updated item
+     * @return the result, {@code UNKNOWN} if the comparison hashes need to be compared
+     */
+    static AttributePrefilter.Result compareContent(final DistributionContentItem original, final DistributionContentItem updated) {
+        if (USE_METADATA_HASH || !(original instanceof DistributionItemFileImpl) || !(updated instanceof DistributionItemFileImpl)) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        final Path o = ((DistributionItemFileImpl) original).getFileSystemPath();
+        final Path n = ((DistributionItemFileImpl) updated).getFileSystemPath();
+        try {
+            if (!original.isLeaf() && !updated.isLeaf()) {
+                if (ModuleDiffUtils.deepInspection && Files.exists(o.resolve("module.xml")) && Files.exists(n.resolve("module.xml"))) {
+                    return ModuleDiffUtils.compareModules(o, getModuleXml(o, original), n, getModuleXml(n, updated));
                 }
+            } else if (original.isLeaf() && updated.isLeaf() && isJar(n)) {
+                return compareJars(o, n);
             }
-            // Add the manifest
-            entries.add(new Entry(JarFile.MANIFEST_NAME, digest.digest()));
+        } catch (IOException e) {
+            // Leave the error reporting to the hashing
         }
-        // Add the hashes to the jarDigest
-        for (final Entry entry : entries) {
-            final byte[] hash = entry.getHash();
-            if (hash != null) {
-                jarDigest.update(hash);
+        return AttributePrefilter.Result.UNKNOWN;
+    }
+
+    /**
+     * Compare two jars based on their central directories. Entries with the same name, CRC-32 and size are equal
+     * without inflating them, only the remaining entries are inflated and hashed. The result is the same as comparing
+     * the hashes of {@link #internalJarComparison(Path)}.
+     *
+     * @param original the original jar
+     * @param updated  the updated jar
+     * @return the result, {@code UNKNOWN} if the entries differ in a way requiring to compare the hashes
+     * @throws IOException
+     */
+    static AttributePrefilter.Result compareJars(final Path original, final Path updated) throws IOException {
+        // Only local files provide random access to the central directory
+        if (!DistributionArchive.isLocal(original) || !DistributionArchive.isLocal(updated)) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        final ZipFile o = openZip(original);
+        if (o == null) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        try {
+            final ZipFile n = openZip(updated);
+            if (n == null) {
+                return AttributePrefilter.Result.UNKNOWN;
+            }
+            try {
+                return compareJars(o, n);
+            } finally {
+                n.close();
+            }
+        } finally {
+            o.close();
+        }
+    }
+
+    private static AttributePrefilter.Result compareJars(final ZipFile original, final ZipFile updated) throws IOException {
+        // Empty jars are hashed by their raw content
+        if (original.size() == 0 || updated.size() == 0) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        final CentralDirectory o = new CentralDirectory(original);
+        final CentralDirectory n = new CentralDirectory(updated);
+        // Different entries could still result in the same hashes, since the names are not hashed
+        if (o.manifest != n.manifest || !o.entries.keySet().equals(n.entries.keySet())) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+        try {
+            for (final Map.Entry<String, ZipEntry> entry : o.entries.entrySet()) {
+                final ZipEntry oe = entry.getValue();
+                final ZipEntry ne = n.entries.get(entry.getKey());
+                if (oe.getCrc() != -1 && oe.getCrc() == ne.getCrc() && oe.getSize() == ne.getSize()) {
+                    continue;
+                }
+                final boolean manifest = o.manifest && entry.getKey().equals(JarFile.MANIFEST_NAME);
+                if (!Arrays.equals(hashEntry(original, oe, manifest, digest), hashEntry(updated, ne, manifest, digest))) {
+                    return AttributePrefilter.Result.MODIFIED;
+                }
+            }
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, digest);
+        }
+        return AttributePrefilter.Result.UNCHANGED;
+    }
+
+    /**
+     * Compare the entries of two jars with the same normalization as the comparison hashes, for the
+     * {@link ChangeReport}. Like in {@link #compareJars(Path, Path)}, entries with the same name, CRC-32 and size are
+     * equal without inflating them.
+     *
+     * @param original the original jar, {@code null} if it does not exist
+     * @param updated  the updated jar, {@code null} if it does not exist
+     * @param changes  populated with the added, removed and changed entries
+     * @throws IOException
+     */
+    static void compareEntries(final Path original, final Path updated, final ChangeReport.Jar changes) throws IOException {
+        if ((original == null || DistributionArchive.isLocal(original)) && (updated == null || DistributionArchive.isLocal(updated))) {
+            final ZipFile o = openZip(original);
+            try {
+                final ZipFile n = openZip(updated);
+                try {
+                    compareEntries(o, n, changes);
+                } finally {
+                    if (n != null) {
+                        n.close();
+                    }
+                }
+            } finally {
+                if (o != null) {
+                    o.close();
+                }
+            }
+        } else {
+            // Without random access, compare the entry hashes of reading the whole jars
+            final Map<String, byte[]> o = hashEntries(original);
+            final Map<String, byte[]> n = hashEntries(updated);
+            for (final Map.Entry<String, byte[]> entry : o.entrySet()) {
+                final byte[] hash = n.get(entry.getKey());
+                if (hash == null) {
+                    changes.removed.add(entry.getKey());
+                } else if (!Arrays.equals(entry.getValue(), hash)) {
+                    changes.changed.add(entry.getKey());
+                }
+            }
+            for (final String name : n.keySet()) {
+                if (!o.containsKey(name)) {
+                    changes.added.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open a jar for random access.
+     *
+     * @return the zip file, {@code null} if the jar does not exist or is not a zip
+     */
+    private static ZipFile openZip(final Path file) throws IOException {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new ZipFile(file.toFile());
+        } catch (ZipException e) {
+            return null;
+        }
+    }
+
+    private static void compareEntries(final ZipFile original, final ZipFile updated, final ChangeReport.Jar changes) throws IOException {
+        final CentralDirectory originalDirectory = original == null ? null : new CentralDirectory(original);
+        final CentralDirectory updatedDirectory = updated == null ? null : new CentralDirectory(updated);
+        final Map<String, ZipEntry> o = originalDirectory == null ? Collections.<String, ZipEntry>emptyMap() : originalDirectory.entries;
+        final Map<String, ZipEntry> n = updatedDirectory == null ? Collections.<String, ZipEntry>emptyMap() : updatedDirectory.entries;
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+        try {
+            for (final Map.Entry<String, ZipEntry> entry : o.entrySet()) {
+                final ZipEntry oe = entry.getValue();
+                final ZipEntry ne = n.get(entry.getKey());
+                if (ne == null) {
+                    changes.removed.add(entry.getKey());
+                    continue;
+                }
+                if (oe.getCrc() != -1 && oe.getCrc() == ne.getCrc() && oe.getSize() == ne.getSize()) {
+                    continue;
+                }
+                // The manifest is only normalized if picked up as manifest
+                final boolean manifest = entry.getKey().equals(JarFile.MANIFEST_NAME);
+                if (!Arrays.equals(hashEntry(original, oe, manifest && originalDirectory.manifest, digest),
+                        hashEntry(updated, ne, manifest && updatedDirectory.manifest, digest))) {
+                    changes.changed.add(entry.getKey());
+                }
+            }
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, digest);
+        }
+        for (final String name : n.keySet()) {
+            if (!o.containsKey(name)) {
+                changes.added.add(name);
+            }
+        }
+    }
+
+    private static Map<String, byte[]> hashEntries(final Path file) throws IOException {
+        final Map<String, byte[]> hashes = new HashMap<>();
+        if (file != null) {
+            final TreeSet<Entry> entries = new TreeSet<>();
+            final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+            final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+            try {
+                hashEntries(file, digest, new ContentDigest[0], entries);
+            } finally {
+                FileHashUtils.releaseDigest(algorithm, digest);
+            }
+            for (final Entry entry : entries) {
+                hashes.put(entry.getName(), entry.getHash());
+            }
+        }
+        return hashes;
+    }
+
+    private static byte[] hashEntry(final ZipFile file, final ZipEntry entry, final boolean manifest, final ContentDigest digest) throws IOException {
+        final InputStream in = file.getInputStream(entry);
+        try {
+            if (manifest) {
+                return hashManifest(new Manifest(in), digest);
+            }
+            digest.reset();
+            final byte[] buf = FileHashUtils.getBuffer();
+            int l;
+            while ((l = in.read(buf)) > 0) {
+                digest.update(buf, 0, l);
+            }
+            return digest.digest();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The hashed entries of a jar, as listed in the central directory.
+     */
+    private static class CentralDirectory {
+
+        private final Map<String, ZipEntry> entries = new HashMap<>();
+        // Whether the manifest is picked up by the JarInputStream, which only checks the leading entries
+        private boolean manifest;
+
+        CentralDirectory(final ZipFile file) {
+            final Enumeration<? extends ZipEntry> e = file.entries();
+            int index = 0;
+            boolean metaInf = false;
+            while (e.hasMoreElements()) {
+                final ZipEntry entry = e.nextElement();
+                final String name = entry.getName();
+                if ((index == 0 || index == 1 && metaInf) && JarFile.MANIFEST_NAME.equalsIgnoreCase(name)) {
+                    manifest = true;
+                    entries.put(JarFile.MANIFEST_NAME, entry);
+                } else if (!entry.isDirectory() && !isIgnoredEntry(name) && !entries.containsKey(name)) {
+                    entries.put(name, entry);
+                }
+                metaInf = index == 0 && "META-INF/".equalsIgnoreCase(name);
+                index++;
             }
         }
     }
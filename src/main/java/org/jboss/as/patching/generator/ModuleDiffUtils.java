@@ -4,97 +4,314 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import org.jboss.as.patching.HashUtils;
+import java.util.TreeMap;
 
 /**
  * @author Emanuel Muckenhuber
  */
 class ModuleDiffUtils implements XMLStreamConstants {
 
-    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    /**
+     * A preconfigured factory per worker, factories are not guaranteed to be thread safe.
+     */
+    static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+            setIfSupported(inputFactory, XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+            setIfSupported(inputFactory, XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            return inputFactory;
+        }
+    };
 
     protected static volatile boolean deepInspection = false;
 
     /**
-     * Process a module.
+     * The modules inspected in detail, globs matching {@code <layer>/<module path>/<slot>}. Other modules are only
+     * compared by their raw content. {@code null} if all modules are inspected in detail.
+     */
+    private static volatile List<DistributionContentItem.GlobPathFilter> inspectedModules;
+
+    /**
+     * Enable detailed inspection, for all modules or the selected ones. Selections add up until disabled again,
+     * unless all modules are inspected anyway.
      *
-     * This will go parse the module.xml and record all attributes and elements, except resources, which are processed
-     * after separately to ignore different file system paths.
+     * @param paths globs matching {@code <layer>/<module path>/<slot>}, empty for all modules
+     */
+    static synchronized void enableDeepInspection(final Collection<String> paths) {
+        if (paths.isEmpty()) {
+            inspectedModules = null;
+        } else if (!deepInspection || inspectedModules != null) {
+            final List<DistributionContentItem.GlobPathFilter> selected = new ArrayList<>();
+            if (deepInspection) {
+                selected.addAll(inspectedModules);
+            }
+            for (final String path : paths) {
+                selected.add(new DistributionContentItem.GlobPathFilter(path));
+            }
+            inspectedModules = selected;
+        }
+        deepInspection = true;
+    }
+
+    /**
+     * Disable detailed inspection, dropping the module selection.
+     */
+    static synchronized void disableDeepInspection() {
+        deepInspection = false;
+        inspectedModules = null;
+    }
+
+    /**
+     * Whether a module is inspected in detail. The comparison hashes are calculated the same way for every module,
+     * so that snapshots and cached hashes do not depend on the selection. Modules which are not selected are modified
+     * if their raw content changed, based on the metadata hashes.
      *
-     * @param root          the module root
-     * @param moduleName    the module name
-     * @param metadataHash  the hash used for the metadata
+     * @param layer  the layer or add-on name
+     * @param module the module path relative to the layer, e.g. {@code org/jboss/as/server/main}
+     * @return {@code true} if the module is inspected in detail
+     */
+    static boolean isInspected(final String layer, final String module) {
+        if (!deepInspection) {
+            return false;
+        }
+        final List<DistributionContentItem.GlobPathFilter> selected = inspectedModules;
+        if (selected == null) {
+            return true;
+        }
+        final String path = layer + '/' + module;
+        for (final DistributionContentItem.GlobPathFilter filter : selected) {
+            if (filter.accept(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Process a module with detailed inspection, based on the already parsed module.xml.
+     *
+     * The parse recorded all attributes and elements of the module.xml, except resources, which are processed
+     * after separately to ignore different file system paths. If a metadata digest is passed, the whole module
+     * directory is walked once in the order of {@code FileHashUtils.hashFile()}, feeding the metadata digest. The
+     * resources and native libs within the module are hashed for the comparison from the same reads.
+     *
+     * @param root           the module root
+     * @param moduleXml      the parsed module.xml
+     * @param metadataDigest the digest for the metadata hash of the module directory, can be {@code null}
      * @return the comparison hash for the module
      * @throws IOException
      * @throws NoSuchAlgorithmException
      */
-    public static byte[] processModule(final File root, final String moduleName, final byte[] metadataHash) throws IOException, NoSuchAlgorithmException {
+    static byte[] processModule(final Path root, final ModuleXml moduleXml, final ContentDigest metadataDigest) throws IOException, NoSuchAlgorithmException {
 
-        if (! deepInspection) {
-            return metadataHash;
+        final Set<String> resources = moduleXml.resources;
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        final ContentDigest moduleDigest = FileHashUtils.acquireDigest(algorithm);
+        try {
+            // Process the module.xml
+            moduleDigest.update(moduleXml.processed);
+
+            final Path lib = root.resolve("lib");
+            final Map<Path, byte[]> hashed = new HashMap<>();
+            if (metadataDigest != null) {
+                for (final String path : resources) {
+                    hashed.put(root.resolve(path).normalize(), null);
+                }
+                hashed.put(lib, null);
+                walk(root, true, Collections.singletonList(metadataDigest), hashed);
+            }
+
+            // Process resource paths
+            for (final String path : resources) {
+                final Path resource = root.resolve(path);
+                if (! Files.exists(resource)) {
+                    throw new FileNotFoundException(resource.toAbsolutePath().toString());
+                }
+                final byte[] hash = hashed.get(resource.normalize());
+                if (hash != null) {
+                    moduleDigest.update(hash);
+                } else if (path.endsWith(".jar")) {
+                    try {
+                        JarDiffUtils.internalJarComparison(resource, moduleDigest);
+                    } catch (Exception e) {
+                        throw new IOException("failed to process " + resource.toAbsolutePath(), e);
+                    }
+                } else {
+                    moduleDigest.update(FileHashUtils.hashFile(resource, algorithm));
+                }
+            }
+
+            // Process native libs
+            if (Files.exists(lib)) {
+                final byte[] hash = hashed.get(lib);
+                moduleDigest.update(hash != null ? hash : FileHashUtils.hashFile(lib, algorithm));
+            }
+
+            return moduleDigest.digest();
+        } finally {
+            FileHashUtils.releaseDigest(algorithm, moduleDigest);
         }
+    }
 
-        final File moduleXml = new File(root, "module.xml");
-        if (! moduleXml.isFile()) {
-            throw new IOException("not a module" + root.getAbsolutePath());
+    /**
+     * Compare two modules with detailed inspection, rather than comparing their comparison hashes. Resource jars are
+     * compared based on their central directories, see {@link JarDiffUtils#compareJars(Path, Path)}, so that only the
+     * differing entries need to be inflated.
+     *
+     * @param original    the original module root
+     * @param originalXml the parsed module.xml of the original module
+     * @param updated     the updated module root
+     * @param updatedXml  the parsed module.xml of the updated module
+     * @return the result, {@code UNKNOWN} if the comparison hashes need to be compared
+     * @throws IOException
+     */
+    static AttributePrefilter.Result compareModules(final Path original, final ModuleXml originalXml, final Path updated, final ModuleXml updatedXml) throws IOException {
+        final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+        if (!Arrays.equals(originalXml.processed, updatedXml.processed)) {
+            return AttributePrefilter.Result.MODIFIED;
         }
+        final Set<String> originalResources = originalXml.resources;
+        final Set<String> updatedResources = updatedXml.resources;
+        // Only the content of the resources is hashed, not their paths
+        if (!new ArrayList<>(originalResources).equals(new ArrayList<>(updatedResources))) {
+            return AttributePrefilter.Result.UNKNOWN;
+        }
+        for (final String path : originalResources) {
+            final Path o = original.resolve(path);
+            final Path n = updated.resolve(path);
+            if (!Files.exists(o) || !Files.exists(n)) {
+                return AttributePrefilter.Result.UNKNOWN;
+            }
+            final AttributePrefilter.Result result;
+            if (path.endsWith(".jar")) {
+                result = Files.isRegularFile(o) && Files.isRegularFile(n) ? JarDiffUtils.compareJars(o, n) : AttributePrefilter.Result.UNKNOWN;
+            } else {
+                result = compareFiles(o, n, algorithm);
+            }
+            if (result != AttributePrefilter.Result.UNCHANGED) {
+                return result;
+            }
+        }
+        // Process native libs
+        final Path o = original.resolve("lib");
+        final Path n = updated.resolve("lib");
+        if (Files.exists(o) != Files.exists(n)) {
+            return AttributePrefilter.Result.MODIFIED;
+        }
+        return Files.exists(o) ? compareFiles(o, n, algorithm) : AttributePrefilter.Result.UNCHANGED;
+    }
 
-        final Set<String> resources = new LinkedHashSet<>();
-        final MessageDigest moduleDigest = MessageDigest.getInstance("SHA1");
+    private static AttributePrefilter.Result compareFiles(final Path original, final Path updated, final ContentDigest.Algorithm algorithm) throws IOException {
+        final boolean equal = Arrays.equals(FileHashUtils.hashFile(original, algorithm), FileHashUtils.hashFile(updated, algorithm));
+        return equal ? AttributePrefilter.Result.UNCHANGED : AttributePrefilter.Result.MODIFIED;
+    }
 
-        // Process the module.xml
-        final InputStream stream = new FileInputStream(moduleXml);
+    /**
+     * Parse a module.xml, recording what {@link #processRoot} digests instead of digesting it right away. The modules
+     * are parsed on the workers processing the distribution, the detailed inspection only replays the result.
+     *
+     * @param moduleXml the module.xml
+     * @return the parsed module.xml
+     * @throws IOException
+     */
+    static ModuleXml parseModuleXml(final Path moduleXml) throws IOException {
+        final ContentDigest.RecordingDigest digest = new ContentDigest.RecordingDigest();
+        final Set<String> resources = new LinkedHashSet<>();
+        final InputStream stream = Files.newInputStream(moduleXml);
         try {
-            final XMLInputFactory inputFactory = INPUT_FACTORY;
-            setIfSupported(inputFactory, XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
-            setIfSupported(inputFactory, XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
-            final XMLStreamReader reader = inputFactory.createXMLStreamReader(stream);
-            processRoot(reader, moduleDigest, resources);
+            final XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(stream);
+            try {
+                processRoot(reader, digest, resources);
+            } finally {
+                reader.close();
+            }
         } catch (XMLStreamException e) {
             throw new IOException(e);
         } finally {
-            if (stream != null) {
-                stream.close();
-            }
+            stream.close();
         }
+        return new ModuleXml(digest.digest(), resources);
+    }
 
-        // Process resource paths
-        for (final String path : resources) {
-            final File resource = new File(root, path);
-            if (! resource.exists()) {
-                throw new FileNotFoundException(resource.getAbsolutePath());
+    /**
+     * Walk the module content, feeding the active digests. Resource jars are parsed while being read, other
+     * resources and directories are hashed along the way. The results are recorded for the paths in {@code hashed}.
+     */
+    private static void walk(final Path path, final boolean directory, final List<ContentDigest> active, final Map<Path, byte[]> hashed) throws IOException {
+        final boolean target = hashed.containsKey(path);
+        if (directory) {
+            // Exploded jars are left to the regular processing
+            final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+            final ContentDigest digest = target && !path.toString().endsWith(".jar") ? FileHashUtils.acquireDigest(algorithm) : null;
+            List<ContentDigest> digests = active;
+            if (digest != null) {
+                digests = new ArrayList<>(active);
+                digests.add(digest);
             }
-            if (path.endsWith(".jar")) {
-                try {
-                    JarDiffUtils.internalJarComparison(resource, moduleDigest, false);
-                } catch (Exception e) {
-                    throw new IOException("failed to process " + resource.getAbsolutePath(), e);
+            final Map<String, Path> sorted = new TreeMap<String, Path>();
+            final DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+            try {
+                for (final Path child : stream) {
+                    sorted.put(child.getFileName().toString(), child);
                 }
-            } else {
-                moduleDigest.update(HashUtils.hashFile(resource));
+            } finally {
+                stream.close();
             }
+            try {
+                for (final Path child : sorted.values()) {
+                    walk(child, Files.isDirectory(child), digests, hashed);
+                }
+                if (digest != null) {
+                    hashed.put(path, digest.digest());
+                }
+            } finally {
+                if (digest != null) {
+                    FileHashUtils.releaseDigest(algorithm, digest);
+                }
+            }
+        } else if (target && path.toString().endsWith(".jar")) {
+            // Record the entry hashes, to add them to the module digest in the order of the resources
+            final ContentDigest.RecordingDigest entries = new ContentDigest.RecordingDigest();
+            try {
+                JarDiffUtils.internalJarComparison(path, entries, active.toArray(new ContentDigest[active.size()]));
+            } catch (Exception e) {
+                throw new IOException("failed to process " + path.toAbsolutePath(), e);
+            }
+            hashed.put(path, entries.digest());
+        } else if (target) {
+            final ContentDigest.Algorithm algorithm = ContentDigest.comparison;
+            final ContentDigest digest = FileHashUtils.acquireDigest(algorithm);
+            try {
+                final List<ContentDigest> digests = new ArrayList<>(active);
+                digests.add(digest);
+                FileHashUtils.updateDigests(path, digests.toArray(new ContentDigest[digests.size()]));
+                hashed.put(path, digest.digest());
+            } finally {
+                FileHashUtils.releaseDigest(algorithm, digest);
+            }
+        } else {
+            FileHashUtils.updateDigests(path, active.toArray(new ContentDigest[active.size()]));
         }
-
-        // Process native libs
-        final File lib = new File(root, "lib");
-        if (lib.exists()) {
-            moduleDigest.update(HashUtils.hashFile(lib));
-        }
-
-        return moduleDigest.digest();
     }
 
-    protected static void processRoot(final XMLStreamReader reader, final MessageDigest digest, final Set<String> resources) throws XMLStreamException {
+    protected static void processRoot(final XMLStreamReader reader, final ContentDigest digest, final Set<String> resources) throws XMLStreamException {
 
         reader.require(START_DOCUMENT, null, null);
         reader.nextTag();
@@ -108,7 +325,7 @@ class ModuleDiffUtils implements XMLStreamConstants {
         }
     }
 
-    protected static void processXml(final XMLStreamReader reader, final MessageDigest digest, final Set<String> resources) throws XMLStreamException {
+    protected static void processXml(final XMLStreamReader reader, final ContentDigest digest, final Set<String> resources) throws XMLStreamException {
         processAttributes(reader, digest);
         while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
             final String localName = reader.getLocalName();
@@ -121,7 +338,7 @@ class ModuleDiffUtils implements XMLStreamConstants {
         }
     }
 
-    protected static void processAttributes(final XMLStreamReader reader, final MessageDigest digest) {
+    protected static void processAttributes(final XMLStreamReader reader, final ContentDigest digest) {
         int attributes = reader.getAttributeCount();
         for (int i = 0; i < attributes; i++) {
             final String name = reader.getAttributeLocalName(i);
@@ -156,6 +373,24 @@ class ModuleDiffUtils implements XMLStreamConstants {
         }
     }
 
+    /**
+     * The result of parsing a module.xml.
+     */
+    static class ModuleXml {
+
+        private final byte[] processed;
+        private final Set<String> resources;
+
+        ModuleXml(final byte[] processed, final Set<String> resources) {
+            this.processed = processed;
+            this.resources = Collections.unmodifiableSet(resources);
+        }
+
+        Set<String> getResources() {
+            return resources;
+        }
+    }
+
     private static void setIfSupported(final XMLInputFactory inputFactory, final String property, final Object value) {
         if (inputFactory.isPropertySupported(property)) {
             inputFactory.setProperty(property, value);
@@ -0,0 +1,371 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Matches names against a set of globs, e.g. the jar entries and manifest attributes ignored by the comparison.
+ * <p/>
+ * All globs are compiled once into a single deterministic automaton, so a name is checked in one pass over its
+ * characters, regardless of the number of globs. The wildcards are:
+ * <ul>
+ * <li><code>"?"</code> - match any non-slash character</li>
+ * <li><code>"*"</code> - match zero or more non-slash characters</li>
+ * <li><code>"**"</code> - match zero or more characters, including slashes</li>
+ * <li><code>"**&#47;"</code> - match zero or more directories</li>
+ * </ul>
+ * Unlike the {@link DistributionContentItem.GlobPathFilter}, a glob only matches the whole name, not the children
+ * of a directory.
+ *
+ * @author agent
+ */
+class NameMatcher {
+
+    // Fall back to a regular expression for globs resulting in an unreasonably large automaton
+    private static final int MAX_STATES = 4096;
+
+    // The elements of the globs, each being a position of the nondeterministic automaton
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte STAR = 2;
+    private static final byte DOUBLE_STAR = 3;
+    private static final byte DIRECTORIES = 4;
+    private static final byte DIRECTORIES_LOOP = 5;
+    private static final byte END = 6;
+
+    private final Set<String> globs;
+
+    // The characters are mapped to classes, which are treated the same by all globs
+    private final int[] asciiClasses = new int[128];
+    private final Map<Character, Integer> classes = new HashMap<Character, Integer>();
+    private int otherClass;
+
+    // The next state for each state and character class, -1 if no glob can match anymore
+    private int[] transitions;
+    private int classCount;
+    private boolean[] accepting;
+    private Pattern pattern;
+
+    NameMatcher(final Collection<String> globs) {
+        this.globs = new TreeSet<String>(globs);
+
+        // Build the nondeterministic automaton, one position per element of a glob
+        final List<Byte> types = new ArrayList<Byte>();
+        final List<Character> literals = new ArrayList<Character>();
+        final BitSet starts = new BitSet();
+        for (final String glob : this.globs) {
+            starts.set(types.size());
+            int i = 0;
+            while (i < glob.length()) {
+                final char c = glob.charAt(i);
+                if (c == '?') {
+                    add(types, literals, ANY, c);
+                    i++;
+                } else if (glob.startsWith("**/", i)) {
+                    add(types, literals, DIRECTORIES, c);
+                    add(types, literals, DIRECTORIES_LOOP, c);
+                    i += 3;
+                } else if (glob.startsWith("**", i)) {
+                    add(types, literals, DOUBLE_STAR, c);
+                    i += 2;
+                } else if (c == '*') {
+                    add(types, literals, STAR, c);
+                    i++;
+                } else {
+                    add(types, literals, LITERAL, c);
+                    i++;
+                }
+            }
+            add(types, literals, END, '\0');
+        }
+        final byte[] type = new byte[types.size()];
+        final char[] literal = new char[types.size()];
+        for (int i = 0; i < type.length; i++) {
+            type[i] = types.get(i);
+            literal[i] = literals.get(i);
+        }
+
+        // One class per literal character and the slash, all other characters share one class
+        final List<Character> representatives = new ArrayList<Character>();
+        final Set<Character> distinct = new TreeSet<Character>();
+        distinct.add('/');
+        for (int i = 0; i < type.length; i++) {
+            if (type[i] == LITERAL) {
+                distinct.add(literal[i]);
+            }
+        }
+        for (final char c : distinct) {
+            if (c < 128) {
+                asciiClasses[c] = representatives.size();
+            } else {
+                classes.put(c, representatives.size());
+            }
+            representatives.add(c);
+        }
+        char other = '\u0001';
+        while (distinct.contains(other)) {
+            other++;
+        }
+        otherClass = representatives.size();
+        representatives.add(other);
+        for (int c = 0; c < 128; c++) {
+            if (!distinct.contains((char) c)) {
+                asciiClasses[c] = otherClass;
+            }
+        }
+
+        // Subset construction of the deterministic automaton
+        final Map<BitSet, Integer> states = new HashMap<BitSet, Integer>();
+        final List<BitSet> sets = new ArrayList<BitSet>();
+        final List<int[]> table = new ArrayList<int[]>();
+        final Deque<Integer> pending = new ArrayDeque<Integer>();
+        final BitSet start = closure(type, starts);
+        states.put(start, 0);
+        sets.add(start);
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            final int state = pending.poll();
+            final int[] next = new int[representatives.size()];
+            for (int i = 0; i < next.length; i++) {
+                final BitSet target = step(type, literal, sets.get(state), representatives.get(i));
+                if (target.isEmpty()) {
+                    next[i] = -1;
+                    continue;
+                }
+                Integer index = states.get(target);
+                if (index == null) {
+                    if (sets.size() == MAX_STATES) {
+                        pattern = compile(this.globs);
+                        return;
+                    }
+                    index = sets.size();
+                    states.put(target, index);
+                    sets.add(target);
+                    pending.add(index);
+                }
+                next[i] = index;
+            }
+            while (table.size() <= state) {
+                table.add(null);
+            }
+            table.set(state, next);
+        }
+        classCount = representatives.size();
+        transitions = new int[table.size() * classCount];
+        for (int i = 0; i < table.size(); i++) {
+            System.arraycopy(table.get(i), 0, transitions, i * classCount, classCount);
+        }
+        accepting = new boolean[sets.size()];
+        for (int i = 0; i < accepting.length; i++) {
+            final BitSet set = sets.get(i);
+            for (int p = set.nextSetBit(0); p >= 0; p = set.nextSetBit(p + 1)) {
+                accepting[i] |= type[p] == END;
+            }
+        }
+    }
+
+    /**
+     * Get the globs.
+     *
+     * @return the sorted globs
+     */
+    Set<String> getGlobs() {
+        return globs;
+    }
+
+    /**
+     * Whether a name matches any of the globs.
+     *
+     * @param name the name
+     * @return {@code true} if the name matches
+     */
+    boolean matches(final String name) {
+        if (pattern != null) {
+            return pattern.matcher(name).matches();
+        }
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final int characterClass;
+            if (c < 128) {
+                characterClass = asciiClasses[c];
+            } else {
+                final Integer mapped = classes.get(c);
+                characterClass = mapped == null ? otherClass : mapped;
+            }
+            state = transitions[state * classCount + characterClass];
+            if (state < 0) {
+                return false;
+            }
+        }
+        return accepting[state];
+    }
+
+    /**
+     * Whether the names are matched by the automaton, rather than the regular expression used for too many states.
+     *
+     * @return {@code true} if the automaton is used
+     */
+    boolean usesAutomaton() {
+        return pattern == null;
+    }
+
+    private static void add(final List<Byte> types, final List<Character> literals, final byte type, final char literal) {
+        types.add(type);
+        literals.add(literal);
+    }
+
+    /**
+     * Add the positions reachable without consuming a character.
+     */
+    private static BitSet closure(final byte[] type, final BitSet positions) {
+        final BitSet closure = (BitSet) positions.clone();
+        final Deque<Integer> pending = new ArrayDeque<Integer>();
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            pending.add(p);
+        }
+        while (!pending.isEmpty()) {
+            final int p = pending.poll();
+            switch (type[p]) {
+                case STAR:
+                case DOUBLE_STAR:
+                    addPosition(closure, pending, p + 1);
+                    break;
+                case DIRECTORIES:
+                    // Either no directory at all or any characters up to a slash
+                    addPosition(closure, pending, p + 1);
+                    addPosition(closure, pending, p + 2);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return closure;
+    }
+
+    private static void addPosition(final BitSet positions, final Deque<Integer> pending, final int p) {
+        if (!positions.get(p)) {
+            positions.set(p);
+            pending.add(p);
+        }
+    }
+
+    /**
+     * Get the positions after consuming a character.
+     */
+    private static BitSet step(final byte[] type, final char[] literal, final BitSet positions, final char c) {
+        final BitSet next = new BitSet();
+        for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+            switch (type[p]) {
+                case LITERAL:
+                    if (literal[p] == c) {
+                        next.set(p + 1);
+                    }
+                    break;
+                case ANY:
+                    if (c != '/') {
+                        next.set(p + 1);
+                    }
+                    break;
+                case STAR:
+                    if (c != '/') {
+                        next.set(p);
+                    }
+                    break;
+                case DOUBLE_STAR:
+                    next.set(p);
+                    break;
+                case DIRECTORIES_LOOP:
+                    next.set(p);
+                    if (c == '/') {
+                        next.set(p + 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return closure(type, next);
+    }
+
+    /**
+     * Compile the globs into a regular expression, matching the same names as the automaton.
+     *
+     * @param globs the globs
+     * @return the pattern
+     */
+    static Pattern compile(final Collection<String> globs) {
+        final StringBuilder builder = new StringBuilder();
+        for (final String glob : globs) {
+            builder.append(builder.length() > 0 ? "|(?:" : "(?:");
+            int literal = 0;
+            int i = 0;
+            while (i < glob.length()) {
+                final char c = glob.charAt(i);
+                if (c != '*' && c != '?') {
+                    i++;
+                    continue;
+                }
+                if (literal < i) {
+                    builder.append(Pattern.quote(glob.substring(literal, i)));
+                }
+                if (c == '?') {
+                    builder.append("[^/]");
+                    i++;
+                } else if (glob.startsWith("**/", i)) {
+                    builder.append("(?:.*/)?");
+                    i += 3;
+                } else if (glob.startsWith("**", i)) {
+                    builder.append(".*");
+                    i += 2;
+                } else {
+                    builder.append("[^/]*");
+                    i++;
+                }
+                literal = i;
+            }
+            if (literal < glob.length()) {
+                builder.append(Pattern.quote(glob.substring(literal)));
+            }
+            builder.append(')');
+        }
+        return Pattern.compile(builder.toString());
+    }
+
+    @Override
+    public String toString() {
+        return globs.toString();
+    }
+
+}
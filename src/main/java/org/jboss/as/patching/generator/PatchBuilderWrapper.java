@@ -229,7 +229,8 @@ abstract class PatchBuilderWrapper extends PatchBuilder {
                     elementBuilder.removeModule(o.getName(), o.getSlot(), o.getMetadataHash());
                 }
             } else {
-                if (!Arrays.equals(n.getComparisonHash(), o.getComparisonHash())) {
+                final AttributePrefilter.Result result = AttributePrefilter.compare(o, n);
+                if (isModified(layer, result, o, n)) {
                     if(elementBuilder == null) {
                         throw processingError("missing patch-config for layer/add-on %s", layer);
                     }
@@ -237,10 +238,14 @@ abstract class PatchBuilderWrapper extends PatchBuilder {
                         elementBuilder.modifyBundle(n.getName(), n.getSlot(), o.getMetadataHash(), n.getMetadataHash());
                     } else {
                         elementBuilder.modifyModule(n.getName(), n.getSlot(), o.getMetadataHash(), n.getMetadataHash());
+                        final ChangeReport report = ChangeReport.current;
+                        if (report != null) {
+                            report.modifiedModule(layer, o, n);
+                        }
                     }
                 } else {
                     // Treat the version module separately, since the comparison hash will ignore the version property in the manifest
-                    if (includeVersion && n.getName().equals("org.jboss.as.version")) {
+                    if (includeVersion && result != AttributePrefilter.Result.UNCHANGED && n.getName().equals("org.jboss.as.version")) {
                         if (! Arrays.equals(o.getMetadataHash(), n.getMetadataHash())) {
                             if(elementBuilder == null) {
                                 throw processingError("missing patch-config for layer/add-on %s", layer);
@@ -292,8 +297,17 @@ abstract class PatchBuilderWrapper extends PatchBuilder {
             if (n.isLeaf() != o.isLeaf()) {
                 throw processingError("TODO");
             }
-            if (n.isLeaf() && !Arrays.equals(o.getComparisonHash(), n.getComparisonHash())) {
-                builder.modifyFile(n.getName(), n.getParent().getPathAsList(), o.getMetadataHash(), n.getMetadataHash(), !n.isLeaf());
+            if (n.isLeaf()) {
+                if (isModified(o, n)) {
+                    builder.modifyFile(n.getName(), n.getParent().getPathAsList(), o.getMetadataHash(), n.getMetadataHash(), !n.isLeaf());
+                    final ChangeReport report = ChangeReport.current;
+                    if (report != null) {
+                        report.modifiedFile(o, n);
+                    }
+                }
+            } else if (isSameTree(o, n)) {
+                // Identical subtree, nothing to compare
+                return;
             } else {
 
                 final Collection<DistributionContentItem> nc = n.getChildren();
@@ -314,4 +328,70 @@ abstract class PatchBuilderWrapper extends PatchBuilder {
         }
     }
 
+    /**
+     * Check whether two directories have the same tree hash. With the prefilter not all content is hashed, which
+     * only allows skipping subtrees where both sides are hashed completely.
+     *
+     * @param o the original directory
+     * @param n the updated directory
+     * @return {@code true} if the subtrees are known to be identical
+     */
+    private static boolean isSameTree(final DistributionContentItem o, final DistributionContentItem n) {
+        final byte[] original = o.getKnownTreeHash();
+        if (original == null) {
+            return false;
+        }
+        final byte[] updated = n.getKnownTreeHash();
+        return updated != null && Arrays.equals(original, updated);
+    }
+
+    private static boolean isModified(final String layer, final AttributePrefilter.Result result, final DistributionModuleItem o, final DistributionModuleItem n) {
+        switch (result) {
+            case MODIFIED:
+                return true;
+            case UNCHANGED:
+                return false;
+            default:
+                if (!JarDiffUtils.isRawModuleComparison()) {
+                    // Equal raw content implies equal normalized content, which saves the detailed inspection
+                    if (Arrays.equals(o.getMetadataHash(), n.getMetadataHash())) {
+                        return false;
+                    }
+                    // Modules which are not selected for the detailed inspection are compared by their raw content
+                    if (!ModuleDiffUtils.isInspected(layer, n.getName().replace('.', '/') + '/' + n.getSlot())) {
+                        return true;
+                    }
+                }
+                return isModifiedContent(o.getContentItem(), n.getContentItem());
+        }
+    }
+
+    private static boolean isModified(final DistributionContentItem o, final DistributionContentItem n) {
+        switch (AttributePrefilter.compare(o, n)) {
+            case MODIFIED:
+                return true;
+            case UNCHANGED:
+                return false;
+            default:
+                if (!JarDiffUtils.isRawLeafComparison(n.getName()) && Arrays.equals(o.getMetadataHash(), n.getMetadataHash())) {
+                    return false;
+                }
+                return isModifiedContent(o, n);
+        }
+    }
+
+    /**
+     * Compare the content directly where this is cheaper than calculating both comparison hashes, e.g. for jars.
+     */
+    private static boolean isModifiedContent(final DistributionContentItem o, final DistributionContentItem n) {
+        switch (JarDiffUtils.compareContent(o, n)) {
+            case MODIFIED:
+                return true;
+            case UNCHANGED:
+                return false;
+            default:
+                return !Arrays.equals(o.getComparisonHash(), n.getComparisonHash());
+        }
+    }
+
 }
@@ -92,6 +92,37 @@ public interface PatchConfig {
      */
     boolean isGenerateByDiff();
 
+    /**
+     * Gets whether modules should be inspected in detail, like with {@code --detailed-inspection}.
+     *
+     * @return {@code true} if detailed inspection is configured
+     */
+    boolean isDetailedInspection();
+
+    /**
+     * Gets the modules which should be inspected in detail, if {@link #isDetailedInspection() detailed inspection}
+     * is configured.
+     *
+     * @return globs matching {@code <layer>/<module path>/<slot>}, empty for all modules. Will not return {@code null}
+     */
+    Set<String> getDetailedInspectionPaths();
+
+    /**
+     * Gets the jar entries ignored when comparing jars, in addition to the default ones like signatures and maven
+     * metadata.
+     *
+     * @return globs matching the entry names. Will not return {@code null}
+     */
+    Set<String> getIgnoredJarEntries();
+
+    /**
+     * Gets the manifest attributes ignored when comparing jars, in addition to the default ones like
+     * {@code Bnd-LastModified}.
+     *
+     * @return globs matching the attribute names. Will not return {@code null}
+     */
+    Set<String> getIgnoredManifestAttributes();
+
     /**
      * Gets the modifications specifically specified in the patch config, if the config doesn't specify
      * {@link #isGenerateByDiff() generating the modifications by differencing the two distributions}.
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -60,6 +61,10 @@ class PatchConfigBuilder implements ContentItemFilter {
     private String resultingVersion;
     private Patch.PatchType patchType;
     private boolean generateByDiff = true;
+    private boolean detailedInspection;
+    private Set<String> detailedInspectionPaths = new LinkedHashSet<String>();
+    private Set<String> ignoredJarEntries = new LinkedHashSet<String>();
+    private Set<String> ignoredManifestAttributes = new LinkedHashSet<String>();
     private Set<String> runtimeUseItems = new HashSet<String>();
     private Set<ContentItem> specifiedContent = new HashSet<ContentItem>();
     private Map<String, PatchElementConfigBuilder> elements = new LinkedHashMap<String, PatchElementConfigBuilder>();
@@ -103,6 +108,26 @@ class PatchConfigBuilder implements ContentItemFilter {
         return generateByDiff;
     }
 
+    PatchConfigBuilder setDetailedInspection(boolean detailedInspection) {
+        this.detailedInspection = detailedInspection;
+        return this;
+    }
+
+    PatchConfigBuilder addDetailedInspectionPath(String path) {
+        this.detailedInspectionPaths.add(path);
+        return this;
+    }
+
+    PatchConfigBuilder addIgnoredJarEntry(String path) {
+        this.ignoredJarEntries.add(path);
+        return this;
+    }
+
+    PatchConfigBuilder addIgnoredManifestAttribute(String name) {
+        this.ignoredManifestAttributes.add(name);
+        return this;
+    }
+
     PatchConfigBuilder addRuntimeUseItem(String item) {
         this.runtimeUseItems.add(item);
         return this;
@@ -184,6 +209,26 @@ class PatchConfigBuilder implements ContentItemFilter {
             return generateByDiff;
         }
 
+        @Override
+        public boolean isDetailedInspection() {
+            return detailedInspection;
+        }
+
+        @Override
+        public Set<String> getDetailedInspectionPaths() {
+            return detailedInspectionPaths;
+        }
+
+        @Override
+        public Set<String> getIgnoredJarEntries() {
+            return ignoredJarEntries;
+        }
+
+        @Override
+        public Set<String> getIgnoredManifestAttributes() {
+            return ignoredManifestAttributes;
+        }
+
         @Override
         public Set<ContentItem> getSpecifiedContent() {
             return specifiedContent;
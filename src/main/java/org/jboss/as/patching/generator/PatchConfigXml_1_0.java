@@ -60,9 +60,14 @@ class PatchConfigXml_1_0 implements XMLStreamConstants, XMLElementReader<PatchCo
         APPLIES_TO_VERSION("applies-to-version"),
         BUNDLES("bundles"),
         DESCRIPTION("description"),
+        DETAILED_INSPECTION("detailed-inspection"),
         ELEMENT("element"),
         GENERATE_BY_DIFF("generate-by-diff"),
         IN_RUNTIME_USE("in-runtime-use"),
+        IGNORED_ENTRY("ignored-entry"),
+        IGNORED_MANIFEST_ATTRIBUTE("ignored-manifest-attribute"),
+        INCLUDE("include"),
+        JAR_COMPARISON("jar-comparison"),
         MISC_FILES("misc-files"),
         MODULES("modules"),
         NAME("name"),
@@ -159,6 +164,12 @@ class PatchConfigXml_1_0 implements XMLStreamConstants, XMLElementReader<PatchCo
                 case GENERATE_BY_DIFF:
                     parseGenerateByDiff(reader, patchConfigBuilder);
                     break;
+                case DETAILED_INSPECTION:
+                    parseDetailedInspection(reader, patchConfigBuilder);
+                    break;
+                case JAR_COMPARISON:
+                    parseJarComparison(reader, patchConfigBuilder);
+                    break;
                 case SPECIFIED_CONTENT:
                     parseSpecifiedContent(reader, patchConfigBuilder);
                     break;
@@ -471,6 +482,89 @@ class PatchConfigXml_1_0 implements XMLStreamConstants, XMLElementReader<PatchCo
         patchConfigBuilder.addRuntimeUseItem(path);
     }
 
+    private static void parseDetailedInspection(XMLExtendedStreamReader reader, PatchConfigBuilder patchConfigBuilder) throws XMLStreamException {
+
+        requireNoAttributes(reader);
+
+        // Without includes all modules are inspected in detail
+        patchConfigBuilder.setDetailedInspection(true);
+        while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
+            final Element element = Element.forName(reader.getLocalName());
+            switch (element) {
+                case INCLUDE:
+                    parseDetailedInspectionInclude(reader, patchConfigBuilder);
+                    break;
+                default:
+                    throw unexpectedElement(reader);
+            }
+        }
+    }
+
+    private static void parseDetailedInspectionInclude(XMLExtendedStreamReader reader, PatchConfigBuilder patchConfigBuilder) throws XMLStreamException {
+
+        String path = null;
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final String value = reader.getAttributeValue(i);
+            final Attribute attribute = Attribute.forName(reader.getAttributeLocalName(i));
+            switch (attribute) {
+                case PATH:
+                    path = value;
+                    break;
+                default:
+                    throw unexpectedAttribute(reader, i);
+            }
+        }
+
+        if (path == null) {
+            throw missingRequired(reader, Collections.singleton(Attribute.PATH.name));
+        }
+
+        requireNoContent(reader);
+        patchConfigBuilder.addDetailedInspectionPath(path);
+    }
+
+    private static void parseJarComparison(XMLExtendedStreamReader reader, PatchConfigBuilder patchConfigBuilder) throws XMLStreamException {
+
+        requireNoAttributes(reader);
+
+        while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
+            final Element element = Element.forName(reader.getLocalName());
+            switch (element) {
+                case IGNORED_ENTRY:
+                    patchConfigBuilder.addIgnoredJarEntry(parseRequiredAttribute(reader, Attribute.PATH));
+                    break;
+                case IGNORED_MANIFEST_ATTRIBUTE:
+                    patchConfigBuilder.addIgnoredManifestAttribute(parseRequiredAttribute(reader, Attribute.NAME));
+                    break;
+                default:
+                    throw unexpectedElement(reader);
+            }
+        }
+    }
+
+    private static String parseRequiredAttribute(XMLExtendedStreamReader reader, Attribute required) throws XMLStreamException {
+
+        String result = null;
+        final int count = reader.getAttributeCount();
+        for (int i = 0; i < count; i++) {
+            final String value = reader.getAttributeValue(i);
+            final Attribute attribute = Attribute.forName(reader.getAttributeLocalName(i));
+            if (attribute == required) {
+                result = value;
+            } else {
+                throw unexpectedAttribute(reader, i);
+            }
+        }
+
+        if (result == null) {
+            throw missingRequired(reader, Collections.singleton(required.name));
+        }
+
+        requireNoContent(reader);
+        return result;
+    }
+
     private void parseSpecifiedContent(XMLExtendedStreamReader reader, PatchElementConfigBuilder patchConfigBuilder) throws XMLStreamException {
 
         while (reader.hasNext() && reader.nextTag() != END_ELEMENT) {
@@ -30,6 +30,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 
 import org.jboss.as.patching.Constants;
@@ -65,7 +67,7 @@ abstract class PatchContentWriter {
 
     private static final String README = "README.txt";
 
-    abstract File getSourceFile(final ContentItem item) throws IOException;
+    abstract Path getSourceFile(final ContentItem item) throws IOException;
 
     abstract File getTargetFile(final ContentItem item) throws IOException;
 
@@ -82,16 +84,16 @@ abstract class PatchContentWriter {
                 continue;
             }
             final ContentItem item = modification.getItem();
-            final File source = getSourceFile(item);
+            final Path source = getSourceFile(item);
             final File target = getTargetFile(item);
-            if (!source.exists()) {
-                throw processingError("source item does not exist %s", source.getAbsolutePath());
+            if (!Files.exists(source)) {
+                throw processingError("source item does not exist %s", source.toAbsolutePath());
             }
-            IoUtils.copyFile(source, target);
+            DistributionArchive.copy(source, target.toPath());
         }
     }
 
-    static void process(final File targetRoot, final File distributionRoot, final Patch patch) throws IOException, XMLStreamException {
+    static void process(final File targetRoot, final Path distributionRoot, final Patch patch) throws IOException, XMLStreamException {
         try {
             targetRoot.mkdirs();
 
@@ -128,16 +130,16 @@ abstract class PatchContentWriter {
      * Process the patch.
      *
      * @param targetRoot       the target root
-     * @param distributionRoot the distribution root
+     * @param distributionRoot the distribution root, which might be within a zip archive
      * @param patch            the patch
      * @throws IOException
      * @throws XMLStreamException
      */
-    static void internalProcess(final File targetRoot, final File distributionRoot, final Patch patch) throws IOException, XMLStreamException {
+    static void internalProcess(final File targetRoot, final Path distributionRoot, final Patch patch) throws IOException, XMLStreamException {
 
         // TODO get from distribution structure ...
-        final File bundles = new File(distributionRoot, "bundles");
-        final File modules = new File(distributionRoot, "modules");
+        final Path bundles = distributionRoot.resolve("bundles");
+        final Path modules = distributionRoot.resolve("modules");
 
         // Copy content for all elements
         for (final PatchElement element : patch.getElements()) {
@@ -148,15 +150,13 @@ abstract class PatchContentWriter {
             final PatchContentLoader elementLoader = PatchContentLoader.create(elementRoot);
             final PatchContentWriter elementWriter = new PatchContentWriter() {
                 @Override
-                File getSourceFile(ContentItem item) throws IOException {
+                Path getSourceFile(ContentItem item) throws IOException {
                     if (item.getContentType() == ContentType.BUNDLE) {
-                        final File root = new File(bundles, base);
-                        final File layer = new File(root, element.getProvider().getName());
-                        return PatchContentLoader.getModulePath(layer, (ModuleItem) item);
+                        final Path layer = bundles.resolve(base).resolve(element.getProvider().getName());
+                        return getModulePath(layer, (ModuleItem) item);
                     } else if (item.getContentType() == ContentType.MODULE) {
-                        final File root = new File(modules, base);
-                        final File layer = new File(root, element.getProvider().getName());
-                        return PatchContentLoader.getModulePath(layer, (ModuleItem) item);
+                        final Path layer = modules.resolve(base).resolve(element.getProvider().getName());
+                        return getModulePath(layer, (ModuleItem) item);
                     }
                     throw processingError("invalid content item for patch-element %s", item);
                 }
@@ -175,9 +175,9 @@ abstract class PatchContentWriter {
         final PatchContentLoader targetLoader = PatchContentLoader.create(patchRoot);
         final PatchContentWriter writer = new PatchContentWriter() {
             @Override
-            File getSourceFile(ContentItem item) throws IOException {
+            Path getSourceFile(ContentItem item) throws IOException {
                 if (item.getContentType() == ContentType.MISC) {
-                    return PatchContentLoader.getMiscPath(distributionRoot, (MiscContentItem) item);
+                    return getMiscPath(distributionRoot, (MiscContentItem) item);
                 }
                 throw processingError("invalid content item for identity %s", item);
             }
@@ -192,5 +192,27 @@ abstract class PatchContentWriter {
 
     }
 
+    /**
+     * Path based equivalent of {@link PatchContentLoader#getModulePath(File, ModuleItem)}.
+     */
+    static Path getModulePath(final Path root, final ModuleItem item) {
+        Path path = root;
+        for (final String element : item.getName().split("\\.")) {
+            path = path.resolve(element);
+        }
+        return path.resolve(item.getSlot());
+    }
+
+    /**
+     * Path based equivalent of {@link PatchContentLoader#getMiscPath(File, MiscContentItem)}.
+     */
+    static Path getMiscPath(final Path root, final MiscContentItem item) {
+        Path path = root;
+        for (final String element : item.getPath()) {
+            path = path.resolve(element);
+        }
+        return path.resolve(item.getName());
+    }
+
 
 }
@@ -34,6 +34,12 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.jboss.as.patching.IoUtils;
 import org.jboss.as.patching.PatchMessages;
@@ -61,28 +67,46 @@ public class PatchGenerator {
             }
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            // Parsing the options already changes the static settings
+            ProcessingOptions.reset();
         }
     }
 
     private final boolean includeVersion;
+    private final ProcessingOptions options;
     private final File patchConfigFile;
+    private final File changeReportFile;
     private File oldRoot;
     private File newRoot;
     private File patchFile;
     private File tmp;
 
-    private PatchGenerator(File patchConfig, File oldRoot, File newRoot, File patchFile, boolean includeVersion) {
+    private PatchGenerator(File patchConfig, File oldRoot, File newRoot, File patchFile, boolean includeVersion,
+                           ProcessingOptions options, File changeReportFile) {
         this.patchConfigFile = patchConfig;
         this.oldRoot = oldRoot;
         this.newRoot = newRoot;
         this.patchFile = patchFile;
         this.includeVersion = includeVersion;
+        this.options = options;
+        this.changeReportFile = changeReportFile;
     }
 
     private void process() throws IOException, XMLStreamException {
 
+        final ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        final HashPipeline pipeline = options.getIoThreads() > 0 ? new HashPipeline(options.getIoThreads(), pool, options.getThreads()) : null;
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Distribution> baseResult = null;
+        Future<Distribution> updatedResult = null;
         try {
             PatchConfig patchConfig = parsePatchConfig();
+            if (patchConfig.isDetailedInspection()) {
+                ModuleDiffUtils.enableDeepInspection(patchConfig.getDetailedInspectionPaths());
+            }
+            // Before loading the hash cache, which depends on the ignored jar entries
+            JarDiffUtils.ignore(patchConfig.getIgnoredJarEntries(), patchConfig.getIgnoredManifestAttributes());
 
             Set<String> required = new TreeSet<String>();
             if (newRoot == null) {
@@ -93,7 +117,8 @@ public class PatchGenerator {
             }
             if (patchFile == null) {
                 if (newRoot != null) {
-                    patchFile = new File(newRoot, "patch-" + System.currentTimeMillis() + ".par");
+                    final File parent = newRoot.isDirectory() ? newRoot : newRoot.getAbsoluteFile().getParentFile();
+                    patchFile = new File(parent, "patch-" + System.currentTimeMillis() + ".par");
                 } else {
                     required.add("--output-file");
                 }
@@ -110,9 +135,27 @@ public class PatchGenerator {
             boolean includeVersion = patchConfig.getPatchType() == Patch.PatchType.CUMULATIVE ? true : this.includeVersion;
             final String[] ignored = includeVersion ? new String[0] : new String[] {"org/jboss/as/product", "org/jboss/as/version"};
 
-            // Create the distributions
-            final Distribution base = Distribution.create(oldRoot, ignored);
-            final Distribution updated = Distribution.create(newRoot, ignored);
+            final HashCache hashCache = options.loadHashCache();
+            HashCache.current = hashCache;
+            JarDiffUtils.pool = pool;
+            FileKeyIndex.current = FileKeyIndex.enabled ? new FileKeyIndex() : null;
+            // The prefilter needs the attributes of both sides, snapshots are hashed completely
+            final PrefilterPairing pairing = AttributePrefilter.isEnabled() && !Distribution.isSnapshot(oldRoot)
+                    && !Distribution.isSnapshot(newRoot) ? new PrefilterPairing() : null;
+            PrefilterPairing.current = pairing;
+            final ChangeReport changeReport = changeReportFile == null ? null : new ChangeReport(changeReportFile);
+            ChangeReport.current = changeReport;
+
+            // Create the distributions, both are processed concurrently sharing the same pool
+            // Without generate-by-diff only the specified content needs to be processed
+            final ContentScope scope = ContentScope.create(patchConfig);
+            baseResult = executor.submit(createDistribution("applies-to", oldRoot, pool, pipeline, scope, ignored));
+            updatedResult = executor.submit(createDistribution("updated", newRoot, pool, pipeline, scope, ignored));
+            final Distribution base = getResult(baseResult);
+            final Distribution updated = getResult(updatedResult);
+            if (pairing != null) {
+                DistributionProcessor.hashUnpaired(pairing, pool, pipeline);
+            }
 
             if (!base.getName().equals(updated.getName())) {
                 throw processingError("distribution names don't match, expected: %s, but was %s ", base.getName(), updated.getName());
@@ -142,19 +185,97 @@ public class PatchGenerator {
 
             // Create the resulting patch
             final Patch patch = builder.compare(base, updated, includeVersion);
+            AttributePrefilter.report();
+            FileHashUtils.report();
+            if (FileKeyIndex.current != null) {
+                FileKeyIndex.current.report();
+            }
 
             // Copy the contents to the temp dir structure
-            PatchContentWriter.process(tmp, newRoot, patch);
+            PatchContentWriter.process(tmp, updated.getRootPath(), patch);
 
             // Create the patch
             ZipUtils.zip(tmp, patchFile);
 
+            if (changeReport != null) {
+                changeReport.write();
+            }
+
+            if (hashCache != null) {
+                hashCache.report();
+                hashCache.store();
+            }
+
         } finally {
+            executor.shutdownNow();
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            pool.shutdown();
+            HashCache.current = null;
+            FileKeyIndex.current = null;
+            PrefilterPairing.current = null;
+            ChangeReport.current = null;
+            JarDiffUtils.pool = null;
+            JarDiffUtils.ignore(Collections.<String>emptySet(), Collections.<String>emptySet());
+            close(baseResult);
+            close(updatedResult);
             IoUtils.recursiveDelete(tmp);
         }
 
     }
 
+    private static Callable<Distribution> createDistribution(final String type, final File root, final ForkJoinPool pool,
+                                                             final HashPipeline pipeline, final ContentScope scope, final String[] ignored) {
+        return new Callable<Distribution>() {
+            @Override
+            public Distribution call() throws IOException {
+                final long start = System.currentTimeMillis();
+                final Distribution distribution;
+                if (Distribution.isSnapshot(root)) {
+                    distribution = Distribution.load(root, ignored);
+                } else {
+                    distribution = Distribution.create(root, pool, pipeline, scope, ignored);
+                }
+                System.out.printf("INFO: processed %s distribution %s in %d ms%n", type, root.getAbsolutePath(), System.currentTimeMillis() - start);
+                return distribution;
+            }
+        };
+    }
+
+    private static Distribution getResult(final Future<Distribution> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void close(final Future<Distribution> future) {
+        if (future == null) {
+            return;
+        }
+        try {
+            // Wait for the scan to finish, so that the distribution can be closed
+            IoUtils.safeClose(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // already reported
+        }
+    }
+
     private PatchConfig parsePatchConfig() throws FileNotFoundException, XMLStreamException {
         FileInputStream fis = null;
         try {
@@ -193,6 +314,8 @@ public class PatchGenerator {
         File newFile = null;
         File patchFile = null;
         boolean includeVersion = false;
+        final ProcessingOptions options = new ProcessingOptions(true);
+        File changeReportFile = null;
 
         final int argsLength = args.length;
         for (int i = 0; i < argsLength; i++) {
@@ -214,10 +337,6 @@ public class PatchGenerator {
                         System.err.printf(PatchMessages.MESSAGES.fileDoesNotExist(arg));
                         usage();
                         return null;
-                    } else if (!oldFile.isDirectory()) {
-                        System.err.printf(PatchMessages.MESSAGES.fileIsNotADirectory(arg));
-                        usage();
-                        return null;
                     }
                 } else if (arg.startsWith("--updated-dist=")) {
                     String val = arg.substring("--updated-dist=".length());
@@ -226,8 +345,9 @@ public class PatchGenerator {
                         System.err.printf(PatchMessages.MESSAGES.fileDoesNotExist(arg));
                         usage();
                         return null;
-                    } else if (!newFile.isDirectory()) {
-                        System.err.printf(PatchMessages.MESSAGES.fileIsNotADirectory(arg));
+                    } else if (Distribution.isSnapshot(newFile)) {
+                        // The patch content is copied from the updated distribution
+                        System.err.printf("A distribution snapshot can only be used for --applies-to-dist %s%n", arg);
                         usage();
                         return null;
                     }
@@ -251,17 +371,33 @@ public class PatchGenerator {
                         usage();
                         return null;
                     }
-                } else if (arg.equals("--detailed-inspection")) {
-                    ModuleDiffUtils.deepInspection = true;
+                } else if (arg.startsWith("--change-report=")) {
+                    String val = arg.substring("--change-report=".length());
+                    changeReportFile = new File(val);
+                    if (changeReportFile.isDirectory()) {
+                        System.err.printf(PatchMessages.MESSAGES.fileIsADirectory(arg));
+                        usage();
+                        return null;
+                    }
                 } else if (arg.equals("--include-version")) {
                     includeVersion = true;
+                } else if (arg.equals("--create-snapshot")) {
+                    SnapshotGenerator.generate(args);
+                    return null;
                 } else if (arg.equals("--create-template")) {
                     TemplateGenerator.generate(args);
                     return null;
                 } else if (arg.equals("--assemble-patch-bundle")) {
                     PatchBundleGenerator.assemble(args);
                     return null;
+                } else {
+                    // Any other arguments are ignored
+                    options.parse(arg);
                 }
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
+                return null;
             } catch (IndexOutOfBoundsException e) {
                 System.err.printf(PatchMessages.MESSAGES.argumentExpected(arg));
                 usage();
@@ -275,7 +411,7 @@ public class PatchGenerator {
             return null;
         }
 
-        return new PatchGenerator(patchConfig, oldFile, newFile, patchFile, includeVersion);
+        return new PatchGenerator(patchConfig, oldFile, newFile, patchFile, includeVersion, options, changeReportFile);
     }
 
     private static void usage() {
@@ -300,8 +436,13 @@ public class PatchGenerator {
         usage.addArguments("-v", "--version");
         usage.addInstruction(PatchMessages.MESSAGES.argVersion());
 
-        usage.addArguments("--detailed-inspection");
-        usage.addInstruction("Enable detailed inspection for all modules.");
+        new ProcessingOptions(true).addUsage(usage);
+
+        usage.addArguments("--create-snapshot");
+        usage.addInstruction("Write a snapshot of a distribution, which can be used as --applies-to-dist instead of the distribution itself.");
+
+        usage.addArguments("--change-report=<file>");
+        usage.addInstruction("Write the added, removed and changed entries of the jars in modified modules and misc files to the given JSON file.");
 
         String headline = usage.getDefaultUsageHeadline("patch-gen");
         System.out.print(usage.usage(headline));
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pairs the items of both distributions with the same path, while they are processed concurrently.
+ * <p/>
+ * Whichever distribution reaches a path second runs the {@link AttributePrefilter} for the pair, and only hashes the
+ * content of both items if the attributes cannot rule out a change. Items without a counterpart are added or removed,
+ * which needs the metadata hashes. They are hashed once both distributions are processed.
+ *
+ * @author agent
+ */
+class PrefilterPairing {
+
+    /**
+     * The pairing used when processing distributions, {@code null} unless the prefilter compares two file based
+     * distributions.
+     */
+    static volatile PrefilterPairing current;
+
+    private final ConcurrentMap<String, Candidate> unpaired = new ConcurrentHashMap<String, Candidate>();
+
+    /**
+     * Pair an item with the item of the other distribution.
+     *
+     * @param key       the path of the item, relative to the distribution root
+     * @param candidate the candidate
+     * @return the candidate of the other distribution, {@code null} if it was not processed yet
+     */
+    Candidate pair(final String key, final Candidate candidate) {
+        final Candidate existing = unpaired.putIfAbsent(key, candidate);
+        if (existing == null) {
+            return null;
+        }
+        unpaired.remove(key);
+        return existing;
+    }
+
+    /**
+     * Get the items without a counterpart, once both distributions are processed.
+     *
+     * @return the unpaired candidates
+     */
+    Collection<Candidate> getUnpaired() {
+        return new ArrayList<Candidate>(unpaired.values());
+    }
+
+    /**
+     * An item waiting for the item with the same path, and how to hash it.
+     */
+    static class Candidate {
+
+        final DistributionItemFileImpl item;
+        final boolean raw;
+        final boolean inspected;
+
+        Candidate(DistributionItemFileImpl item, boolean raw, boolean inspected) {
+            this.item = item;
+            this.raw = raw;
+            this.inspected = inspected;
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.as.patching.PatchMessages;
+
+/**
+ * The command line options controlling how distributions are processed, shared by the patch and snapshot generation.
+ * <p/>
+ * Most options set static settings of the processing, which have to be {@link #reset()} once the generation is done.
+ *
+ * @author agent
+ */
+class ProcessingOptions {
+
+    private final boolean comparing;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int ioThreads = 0;
+    private File hashCacheFile;
+    private int hashCacheSize = HashCache.DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Create the options.
+     *
+     * @param comparing whether two distributions are compared, which allows the options of the prefilter
+     */
+    ProcessingOptions(final boolean comparing) {
+        this.comparing = comparing;
+    }
+
+    /**
+     * Parse a command line argument, if it is a processing option.
+     *
+     * @param arg the argument
+     * @return {@code true} if the argument is a processing option, {@code false} otherwise
+     * @throws IllegalArgumentException if the value of the option is invalid, the message describes the problem
+     */
+    boolean parse(final String arg) {
+        if (arg.equals("--detailed-inspection")) {
+            ModuleDiffUtils.enableDeepInspection(Collections.<String>emptySet());
+        } else if (arg.startsWith("--detailed-inspection=")) {
+            final List<String> paths = Arrays.asList(arg.substring("--detailed-inspection=".length()).split(","));
+            if (paths.contains("")) {
+                throw new IllegalArgumentException(String.format("Invalid module selection %s", arg));
+            }
+            ModuleDiffUtils.enableDeepInspection(paths);
+        } else if (arg.startsWith("--comparison-digest=")) {
+            final ContentDigest.Algorithm algorithm = ContentDigest.Algorithm.forName(arg.substring("--comparison-digest=".length()));
+            if (algorithm == null) {
+                throw new IllegalArgumentException(String.format("Unsupported digest algorithm %s", arg));
+            }
+            ContentDigest.comparison = algorithm;
+        } else if (comparing && arg.equals("--prefilter")) {
+            AttributePrefilter.enabled = true;
+        } else if (comparing && arg.equals("--trust-mtime")) {
+            AttributePrefilter.enabled = true;
+            AttributePrefilter.trustLastModified = true;
+        } else if (arg.equals("--hard-links")) {
+            FileKeyIndex.enabled = true;
+        } else if (arg.startsWith("--threads=")) {
+            threads = parsePositive(arg, "--threads=", "Invalid number of threads %s");
+        } else if (arg.startsWith("--io-threads=")) {
+            ioThreads = parsePositive(arg, "--io-threads=", "Invalid number of threads %s");
+        } else if (arg.startsWith("--parallel-jar-entries=")) {
+            JarDiffUtils.parallelEntries = parsePositive(arg, "--parallel-jar-entries=", "Invalid number of entries %s");
+        } else if (arg.startsWith("--hash-cache=")) {
+            hashCacheFile = new File(arg.substring("--hash-cache=".length()));
+            if (hashCacheFile.isDirectory()) {
+                throw new IllegalArgumentException(PatchMessages.MESSAGES.fileIsADirectory(arg));
+            }
+        } else if (arg.startsWith("--hash-cache-size=")) {
+            hashCacheSize = parsePositive(arg, "--hash-cache-size=", "Invalid hash cache size %s");
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static int parsePositive(final String arg, final String prefix, final String message) {
+        int value;
+        try {
+            value = Integer.parseInt(arg.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            value = 0;
+        }
+        if (value < 1) {
+            throw new IllegalArgumentException(String.format(message, arg));
+        }
+        return value;
+    }
+
+    /**
+     * Number of threads scanning and hashing the distributions.
+     *
+     * @return the number of threads
+     */
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Number of threads reading the content for the {@link HashPipeline}.
+     *
+     * @return the number of threads, {@code 0} to read the content on the scanning threads
+     */
+    int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Load the hash cache, if enabled.
+     *
+     * @return the hash cache, {@code null} if disabled
+     * @throws IOException
+     */
+    HashCache loadHashCache() throws IOException {
+        return hashCacheFile == null ? null : HashCache.load(hashCacheFile, hashCacheSize);
+    }
+
+    /**
+     * Add the instructions of the processing options.
+     *
+     * @param usage the usage
+     */
+    void addUsage(final Usage usage) {
+        usage.addArguments("--detailed-inspection");
+        usage.addInstruction("Enable detailed inspection for all modules.");
+
+        usage.addArguments("--detailed-inspection=<glob>[,<glob>...]");
+        usage.addInstruction("Enable detailed inspection only for the modules matching <layer>/<module path>/<slot>, e.g. base/org/hibernate/**. Other modules are compared by their raw content.");
+
+        usage.addArguments("--comparison-digest=<sha1|xxhash64>");
+        usage.addInstruction("Digest used to detect changes, the SHA-1 hashes in the patch.xml are then only calculated for the patched content. Defaults to sha1.");
+
+        if (comparing) {
+            usage.addArguments("--prefilter");
+            usage.addInstruction("Compare file sizes before hashing, content is only hashed if the size does not already tell whether it changed.");
+
+            usage.addArguments("--trust-mtime");
+            usage.addInstruction("Same as --prefilter, but additionally treat content with the same size and modification time as unchanged.");
+        }
+
+        usage.addArguments("--hard-links");
+        usage.addInstruction("Share the hashes of hard linked files, e.g. for distributions created from each other with cp -al. Files with the same inode are unchanged without reading them.");
+
+        usage.addArguments("--threads=<n>");
+        usage.addInstruction("Number of threads used to scan and hash the distributions, defaults to the number of available processors.");
+
+        usage.addArguments("--io-threads=<n>");
+        usage.addInstruction("Read the content with a separate pool of the given number of threads, hashing it on the --threads pool. Use a low number for spinning disks or NFS.");
+
+        usage.addArguments("--parallel-jar-entries=<n>");
+        usage.addInstruction("Hash the entries of jars with at least the given number of entries in parallel on the --threads pool, e.g. for large uber-jars with detailed inspection. Jars whose raw content is hashed in the same pass, e.g. for the metadata hash with the default --comparison-digest, are still hashed sequentially.");
+
+        usage.addArguments("--hash-cache=<file>");
+        usage.addInstruction("Cache the content hashes in the given file, so that unchanged content does not need to be hashed again in later runs.");
+
+        usage.addArguments("--hash-cache-size=<n>");
+        usage.addInstruction("Maximum number of entries kept in the hash cache, defaults to " + HashCache.DEFAULT_MAX_ENTRIES + ".");
+    }
+
+    /**
+     * Restore the defaults of the static settings, which would otherwise leak into the next run.
+     */
+    static void reset() {
+        ModuleDiffUtils.disableDeepInspection();
+        ContentDigest.comparison = ContentDigest.Algorithm.SHA1;
+        JarDiffUtils.parallelEntries = 0;
+        AttributePrefilter.enabled = false;
+        AttributePrefilter.trustLastModified = false;
+        FileKeyIndex.enabled = false;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jboss.as.patching.PatchMessages;
+
+/**
+ * Write a snapshot of a released distribution, which can be used as {@code --applies-to-dist} instead of processing
+ * the released distribution for every patch again. Snapshots are written in the compact binary format, unless the
+ * output file ends with {@code .xml}. Passing an existing snapshot as distribution converts between the formats.
+ *
+ * @author agent
+ */
+class SnapshotGenerator {
+
+    private static final String LF = "\r\n";
+
+    static File generate(final String... args) throws IOException {
+        try {
+            return generateSnapshot(args);
+        } finally {
+            // Parsing the options already changes the static settings
+            ProcessingOptions.reset();
+        }
+    }
+
+    private static File generateSnapshot(final String... args) throws IOException {
+
+        File distribution = null;
+        File output = null;
+        final ProcessingOptions options = new ProcessingOptions(false);
+
+        final int argsLength = args.length;
+        for (int i = 0; i < argsLength; i++) {
+            final String arg = args[i];
+            if ("--help".equals(arg) || "-h".equals(arg) || "-H".equals(arg)) {
+                usage();
+                return null;
+            } else if (arg.startsWith("--distribution=")) {
+                distribution = new File(arg.substring("--distribution=".length()));
+                if (!distribution.exists()) {
+                    System.err.printf(PatchMessages.MESSAGES.fileDoesNotExist(arg));
+                    usage();
+                    return null;
+                }
+            } else if (arg.startsWith("--output-file=")) {
+                output = new File(arg.substring("--output-file=".length()));
+                if (output.isDirectory()) {
+                    System.err.printf(PatchMessages.MESSAGES.fileIsADirectory(arg));
+                    usage();
+                    return null;
+                }
+            } else if (arg.equals("--create-snapshot")) {
+                continue;
+            } else {
+                try {
+                    if (options.parse(arg)) {
+                        continue;
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    usage();
+                    return null;
+                }
+                System.err.println(PatchMessages.MESSAGES.argumentExpected(arg));
+                usage();
+                return null;
+            }
+        }
+
+        if (distribution == null || output == null) {
+            usage();
+            return null;
+        }
+
+        if (Distribution.isSnapshot(distribution)) {
+            // Convert between the xml and binary format
+            Distribution.readSnapshot(distribution).writeSnapshot(output);
+            System.out.printf("INFO: converted snapshot %s to %s%n", distribution.getAbsolutePath(), output.getAbsolutePath());
+            return output;
+        }
+        process(distribution, output, options);
+        System.out.printf("INFO: wrote snapshot of %s to %s%n", distribution.getAbsolutePath(), output.getAbsolutePath());
+        return output;
+    }
+
+    private static void process(final File distribution, final File output, final ProcessingOptions options) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        final HashPipeline pipeline = options.getIoThreads() > 0 ? new HashPipeline(options.getIoThreads(), pool, options.getThreads()) : null;
+        try {
+            final HashCache hashCache = options.loadHashCache();
+            HashCache.current = hashCache;
+            JarDiffUtils.pool = pool;
+            FileKeyIndex.current = FileKeyIndex.enabled ? new FileKeyIndex() : null;
+            // Nothing but the default paths is ignored, the patch specific ones are applied when loading the snapshot
+            final Distribution processed = Distribution.createSnapshot(distribution, pool, pipeline);
+            try {
+                processed.writeSnapshot(output);
+            } finally {
+                processed.close();
+            }
+            if (hashCache != null) {
+                hashCache.report();
+                hashCache.store();
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            pool.shutdown();
+            HashCache.current = null;
+            FileKeyIndex.current = null;
+            JarDiffUtils.pool = null;
+        }
+    }
+
+    static void usage() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("USAGE:").append(LF);
+        builder.append("patch-gen.sh --create-snapshot --distribution=<file> --output-file=<file> [--detailed-inspection[=<glob>,...]] [--comparison-digest=<sha1|xxhash64>] [--hard-links] [--threads=<n>] [--io-threads=<n>] [--parallel-jar-entries=<n>] [--hash-cache=<file>] [--hash-cache-size=<n>]").append(LF);
+        builder.append(LF);
+        builder.append("this will write a snapshot of the distribution, which can be passed as --applies-to-dist").append(LF);
+        builder.append("the snapshot is written in the binary format, unless the output file ends with .xml").append(LF);
+        builder.append("if the distribution is a snapshot itself, it is converted to the format of the output file").append(LF);
+        builder.append("it has to be created with the same --detailed-inspection and --comparison-digest settings as the patch").append(LF);
+        builder.append("the module selection of --detailed-inspection=<glob> does not need to match the one of the patch").append(LF);
+        builder.append("patch configs ignoring additional jar entries or manifest attributes in <jar-comparison> cannot use snapshots").append(LF);
+        System.err.println(builder.toString());
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.file;
+import static org.jboss.as.patching.generator.ContentFixtures.jar;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class ChangeReportTestCase {
+
+    private static final String MODULE_XML = "<module xmlns=\"urn:jboss:module:1.1\" name=\"org.foo\"><resources><resource-root path=\"%s\"/></resources></module>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HashCache cache;
+    private File report;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = HashCache.current;
+        HashCache.current = null;
+        report = new File(folder.getRoot(), "changes.json");
+    }
+
+    @After
+    public void tearDown() {
+        HashCache.current = cache;
+    }
+
+    @Test
+    public void testNoChanges() throws Exception {
+
+        final ChangeReport changes = new ChangeReport(report);
+        changes.write();
+        assertEquals("{\n  \"jars\": []\n}\n", read());
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+
+        final ChangeReport changes = new ChangeReport(report);
+        final File a = folder.newFolder("a");
+        final File b = folder.newFolder("b");
+        jar(new File(a, "lib/tool.jar"), ZipEntry.DEFLATED, 1000000000000L,
+                "org/A.class", "a", "org/B.class", "b", "org/C.class", "c");
+        // Other timestamps and compression do not count as changes
+        jar(new File(b, "lib/tool.jar"), ZipEntry.STORED, 1100000000000L,
+                "org/A.class", "a", "org/B.class", "x", "org/D.class", "d", "org/we\"ird\\.class", "w");
+        changes.modifiedFile(item(a, "lib/tool.jar"), item(b, "lib/tool.jar"));
+
+        // Only jars are reported
+        file(new File(a, "docs/readme.txt"), "readme");
+        file(new File(b, "docs/readme.txt"), "changed");
+        changes.modifiedFile(item(a, "docs/readme.txt"), item(b, "docs/readme.txt"));
+
+        changes.write();
+        assertEquals("{\n"
+                + "  \"jars\": [\n"
+                + "    {\n"
+                + "      \"path\": \"lib/tool.jar\",\n"
+                + "      \"added\": [\n"
+                + "        \"org/D.class\",\n"
+                + "        \"org/we\\\"ird\\\\.class\"\n"
+                + "      ],\n"
+                + "      \"removed\": [\n"
+                + "        \"org/C.class\"\n"
+                + "      ],\n"
+                + "      \"changed\": [\n"
+                + "        \"org/B.class\"\n"
+                + "      ]\n"
+                + "    }\n"
+                + "  ]\n"
+                + "}\n", read());
+    }
+
+    @Test
+    public void testModifiedModule() throws Exception {
+
+        final ChangeReport changes = new ChangeReport(report);
+        final String path = "modules/system/layers/base/org/foo/main";
+        final File a = folder.newFolder("a");
+        final File b = folder.newFolder("b");
+        file(new File(a, path + "/module.xml"), String.format(MODULE_XML, "foo-1.0.jar"));
+        jar(new File(a, path + "/foo-1.0.jar"), ZipEntry.DEFLATED, 1000000000000L, "org/A.class", "a", "org/B.class", "b");
+        file(new File(b, path + "/module.xml"), String.format(MODULE_XML, "foo-1.1.jar"));
+        jar(new File(b, path + "/foo-1.1.jar"), ZipEntry.DEFLATED, 1000000000000L, "org/A.class", "a", "org/B.class", "c");
+
+        // The renamed resource root is compared to the original one
+        changes.modifiedModule("base", new DistributionModuleItem("org.foo", "main", item(a, path)),
+                new DistributionModuleItem("org.foo", "main", item(b, path)));
+        changes.write();
+        assertEquals("{\n"
+                + "  \"jars\": [\n"
+                + "    {\n"
+                + "      \"layer\": \"base\",\n"
+                + "      \"module\": \"org.foo:main\",\n"
+                + "      \"original-path\": \"foo-1.0.jar\",\n"
+                + "      \"path\": \"foo-1.1.jar\",\n"
+                + "      \"added\": [],\n"
+                + "      \"removed\": [],\n"
+                + "      \"changed\": [\n"
+                + "        \"org/B.class\"\n"
+                + "      ]\n"
+                + "    }\n"
+                + "  ]\n"
+                + "}\n", read());
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(report.toPath()), ContentFixtures.UTF_8);
+    }
+
+    /**
+     * Create the items of a path, relative to the root of a distribution.
+     *
+     * @param root the distribution root
+     * @param path the path
+     * @return the item of the path
+     */
+    private static DistributionContentItem item(final File root, final String path) throws IOException {
+        DistributionContentItem item = new Distribution().getRoot();
+        Path current = root.toPath();
+        for (final String name : path.split("/")) {
+            current = current.resolve(name);
+            final DistributionContentItem child = new DistributionItemFileImpl(current, Files.readAttributes(current, BasicFileAttributes.class), item);
+            item.getChildren().add(child);
+            item = child;
+        }
+        return item;
+    }
+
+}
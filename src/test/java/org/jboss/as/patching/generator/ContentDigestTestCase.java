@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.jboss.as.patching.HashUtils;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class ContentDigestTestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testXxHash64ReferenceValues() throws Exception {
+
+        assertXxHash64("ef46db3751d8e999", new byte[0]);
+        assertXxHash64("d24ec4f1a98c6e5b", "a".getBytes(UTF_8));
+        assertXxHash64("44bc2cf5ad770999", "abc".getBytes(UTF_8));
+        assertXxHash64("fbcea83c8a378bf1", "Nobody inspects the spammish repetition".getBytes(UTF_8));
+
+        // The tail of 8, 4 and single bytes and the 32 byte stripes
+        assertXxHash64("9bb64b7d66ee9fda", pattern(4));
+        assertXxHash64("dab99d95c6f90092", pattern(8));
+        assertXxHash64("a2aa5f33cc4a6119", pattern(31));
+        assertXxHash64("23c3c17ef790fd97", pattern(32));
+        assertXxHash64("50a7cfc7ba588784", pattern(33));
+        assertXxHash64("5e3e54b431c7493c", pattern(63));
+        assertXxHash64("0eb64b3ef6eeb01f", pattern(64));
+        assertXxHash64("a61f8d4c170fe531", pattern(100));
+        assertXxHash64("5f235fa033f1a3fb", pattern(1000));
+    }
+
+    @Test
+    public void testXxHash64Updates() throws Exception {
+
+        final byte[] data = pattern(1000);
+        final byte[] expected = HashUtils.hexStringToByteArray("5f235fa033f1a3fb");
+        final ContentDigest digest = ContentDigest.Algorithm.XXHASH64.create();
+
+        // Split into chunks not aligned with the stripes
+        for (int chunk = 1; chunk <= 70; chunk++) {
+            for (int off = 0; off < data.length; off += chunk) {
+                digest.update(data, off, Math.min(chunk, data.length - off));
+            }
+            assertArrayEquals("chunk " + chunk, expected, digest.digest());
+        }
+
+        digest.update(ByteBuffer.wrap(data));
+        assertArrayEquals(expected, digest.digest());
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 17);
+        direct.position(17);
+        direct.put(data);
+        direct.position(17);
+        digest.update(direct);
+        assertEquals(0, direct.remaining());
+        assertArrayEquals(expected, digest.digest());
+
+        // The digest is reset after being completed or explicitly
+        digest.update(data, 0, 10);
+        digest.reset();
+        digest.update(data);
+        assertArrayEquals(expected, digest.digest());
+    }
+
+    @Test
+    public void testAlgorithmForName() throws Exception {
+
+        assertSame(ContentDigest.Algorithm.SHA1, ContentDigest.Algorithm.forName("sha1"));
+        assertSame(ContentDigest.Algorithm.XXHASH64, ContentDigest.Algorithm.forName("XxHash64"));
+        assertNull(ContentDigest.Algorithm.forName("md5"));
+    }
+
+    private static void assertXxHash64(final String expected, final byte[] data) {
+        final ContentDigest digest = ContentDigest.Algorithm.XXHASH64.create();
+        digest.update(data);
+        assertEquals(expected, HashUtils.bytesToHexString(digest.digest()));
+    }
+
+    private static byte[] pattern(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 7 + 3);
+        }
+        return data;
+    }
+
+}
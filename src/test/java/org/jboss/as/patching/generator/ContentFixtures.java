@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jboss.as.patching.HashUtils;
+
+/**
+ * Content shared by the tests, for files created in a {@link org.junit.rules.TemporaryFolder}.
+ *
+ * @author agent
+ */
+final class ContentFixtures {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ContentFixtures() {
+        //
+    }
+
+    /**
+     * A made up hash, different for every seed.
+     *
+     * @param seed the seed
+     * @return the hash
+     */
+    static byte[] hash(final int seed) {
+        final byte[] hash = new byte[20];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = (byte) (seed * 31 + i);
+        }
+        return hash;
+    }
+
+    /**
+     * Content of the given length, which is not aligned with any block size.
+     *
+     * @param length the length
+     * @return the content
+     */
+    static byte[] content(final int length) {
+        final byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 13 + 7);
+        }
+        return content;
+    }
+
+    /**
+     * The SHA-1 hash of the content, as used in the patch metadata.
+     *
+     * @param content the content
+     * @return the hash
+     */
+    static byte[] sha1(final byte[] content) {
+        final ContentDigest digest = ContentDigest.Algorithm.SHA1.create();
+        digest.update(content);
+        return digest.digest();
+    }
+
+    /**
+     * Write a file, creating the parent directories.
+     *
+     * @param file    the file
+     * @param content the content
+     * @return the file
+     * @throws IOException
+     */
+    static File file(final File file, final String content) throws IOException {
+        return file(file, content.getBytes(UTF_8));
+    }
+
+    static File file(final File file, final byte[] content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * Write a jar.
+     *
+     * @param file    the file
+     * @param method  the compression method
+     * @param time    the modification time of the entries
+     * @param entries the names and content of the entries, {@code null} content for directories
+     * @return the jar
+     * @throws IOException
+     */
+    static File jar(final File file, final int method, final long time, final String... entries) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        final ZipOutputStream os = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < entries.length; i += 2) {
+                final byte[] content = entries[i + 1] == null ? new byte[0] : entries[i + 1].getBytes(UTF_8);
+                final ZipEntry entry = new ZipEntry(entries[i]);
+                entry.setMethod(method);
+                entry.setTime(time);
+                if (method == ZipEntry.STORED) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setCrc(crc.getValue());
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                }
+                os.putNextEntry(entry);
+                os.write(content);
+                os.closeEntry();
+            }
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    /**
+     * Describe the content of a distribution, to compare two distributions.
+     *
+     * @param distribution the distribution
+     * @return the description of all items and their hashes
+     */
+    static Map<String, String> describe(final Distribution distribution) {
+        final Map<String, String> description = new TreeMap<String, String>();
+        description.put("name", distribution.getName());
+        description.put("version", distribution.getVersion());
+        description.put("comparison-mode", String.valueOf(distribution.getComparisonMode()));
+        for (final String name : distribution.getLayers()) {
+            describe(description, "layer " + name, distribution.getLayer(name));
+        }
+        for (final String name : distribution.getAddOns()) {
+            describe(description, "add-on " + name, distribution.getAddOn(name));
+        }
+        describe(description, "misc ", distribution.getRoot());
+        return description;
+    }
+
+    private static void describe(final Map<String, String> description, final String prefix, final Distribution.ProcessedLayer layer) {
+        for (final DistributionModuleItem item : layer.getModules()) {
+            description.put(prefix + " module " + item.getFullModuleName(), hashes(item));
+        }
+        for (final DistributionModuleItem item : layer.getBundles()) {
+            description.put(prefix + " bundle " + item.getFullModuleName(), hashes(item));
+        }
+    }
+
+    private static void describe(final Map<String, String> description, final String prefix, final DistributionContentItem parent) {
+        for (final DistributionContentItem item : parent.getChildren()) {
+            if (item.isLeaf()) {
+                description.put(prefix + item.getName(), hashes(item));
+            } else {
+                description.put(prefix + item.getName() + "/", "");
+                describe(description, prefix + item.getName() + "/", item);
+            }
+        }
+    }
+
+    private static String hashes(final DistributionModuleItem item) {
+        return HashUtils.bytesToHexString(item.getComparisonHash()) + " " + HashUtils.bytesToHexString(item.getMetadataHash());
+    }
+
+    private static String hashes(final DistributionContentItem item) {
+        return HashUtils.bytesToHexString(item.getComparisonHash()) + " " + HashUtils.bytesToHexString(item.getMetadataHash());
+    }
+
+}
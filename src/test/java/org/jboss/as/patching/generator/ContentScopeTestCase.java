@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.jboss.as.patching.IoUtils;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class ContentScopeTestCase {
+
+    @Test
+    public void testGenerateByDiff() throws Exception {
+        assertNull(ContentScope.create(parse("test-config01.xml")));
+    }
+
+    @Test
+    public void testMisc() throws Exception {
+
+        final ContentScope scope = ContentScope.create(parse("test-config03.xml"));
+        assertNotNull(scope);
+
+        // The directories leading to the specified content
+        assertTrue(scope.includesMisc(item("test")));
+        // Specified content, including the content of directories
+        assertTrue(scope.includesMisc(item("test/file")));
+        assertTrue(scope.includesMisc(item("test/file2")));
+        assertTrue(scope.includesMisc(item("test/file2/sub/file")));
+        assertTrue(scope.includesMisc(item("test/file6")));
+
+        assertFalse(scope.includesMisc(item("other")));
+        assertFalse(scope.includesMisc(item("other/test/file")));
+        assertFalse(scope.includesMisc(item("test/file7")));
+        assertFalse(scope.includesMisc(item("test/file2x")));
+    }
+
+    @Test
+    public void testModulesAndBundles() throws Exception {
+
+        final ContentScope.Layer base = ContentScope.create(parse("test-config03.xml")).getLayer("base");
+
+        for (final boolean bundle : new boolean[] {false, true}) {
+            assertTrue(base.includes(item("org"), bundle));
+            assertTrue(base.includes(item("org/jboss/as"), bundle));
+            assertTrue(base.includes(item("org/jboss/as/test/main"), bundle));
+            assertTrue(base.includes(item("org/jboss/as/test/prod"), bundle));
+            assertTrue(base.includes(item("org/jboss/as/test2/main/module.xml"), bundle));
+            assertTrue(base.includes(item("org/jboss/as/test3/prod/lib/test.jar"), bundle));
+
+            assertFalse(base.includes(item("com"), bundle));
+            assertFalse(base.includes(item("org/jboss/as/test/other"), bundle));
+            assertFalse(base.includes(item("org/jboss/as/test4/main"), bundle));
+            assertFalse(base.includes(item("org/jboss/as/test/main2"), bundle));
+        }
+    }
+
+    @Test
+    public void testOtherLayer() throws Exception {
+
+        final ContentScope scope = ContentScope.create(parse("test-config03.xml"));
+        // Layers and add-ons without a config are not processed at all
+        final ContentScope.Layer other = scope.getLayer("other");
+        assertFalse(other.includes(item("org"), false));
+        assertFalse(other.includes(item("org/jboss/as/test/main"), false));
+        assertFalse(other.includes(item("org/jboss/as/test/main"), true));
+    }
+
+    private static PatchConfig parse(final String name) throws Exception {
+        final InputStream is = ContentScopeTestCase.class.getClassLoader().getResourceAsStream(name);
+        assertNotNull(name, is);
+        try {
+            return PatchConfigXml.parse(is);
+        } finally {
+            IoUtils.safeClose(is);
+        }
+    }
+
+    /**
+     * Create an item for a path, relative to a root without a name like the misc root or a layer directory.
+     *
+     * @param path the path
+     * @return the item
+     */
+    private static DistributionContentItem item(final String path) {
+        DistributionContentItem item = new Distribution().getRoot();
+        for (final String name : path.split("/")) {
+            item = new DistributionItemImpl(item, name, IoUtils.NO_CONTENT, IoUtils.NO_CONTENT, false);
+        }
+        return item;
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.hash;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+
+import org.jboss.as.patching.IoUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class DistributionContentItemTestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameContent() throws Exception {
+
+        final DistributionContentItem root = tree("readme.txt", 1, 2, 3);
+        assertArrayEquals(root.getTreeHash(), tree("readme.txt", 1, 2, 3).getTreeHash());
+        assertArrayEquals(child(root, "docs").getTreeHash(), child(tree("readme.txt", 1, 2, 3), "docs").getTreeHash());
+
+        // An empty directory has a tree hash as well, but not the one of a directory with content
+        final DistributionContentItem empty = directory(root(), "empty");
+        assertFalse(Arrays.equals(empty.getTreeHash(), child(root, "bin").getTreeHash()));
+        assertArrayEquals(empty.getTreeHash(), directory(root(), "empty").getTreeHash());
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+
+        final DistributionContentItem original = tree("readme.txt", 1, 2, 3);
+        final DistributionContentItem changed = tree("readme.txt", 4, 2, 3);
+
+        assertFalse(Arrays.equals(original.getTreeHash(), changed.getTreeHash()));
+        assertFalse(Arrays.equals(child(original, "docs").getTreeHash(), child(changed, "docs").getTreeHash()));
+        // The subtrees without changes keep their hashes
+        assertArrayEquals(child(original, "bin").getTreeHash(), child(changed, "bin").getTreeHash());
+        assertArrayEquals(child(child(original, "docs"), "licenses").getTreeHash(),
+                child(child(changed, "docs"), "licenses").getTreeHash());
+    }
+
+    @Test
+    public void testRenamedFile() throws Exception {
+
+        final DistributionContentItem original = tree("readme.txt", 1, 2, 3);
+        final DistributionContentItem renamed = tree("README.txt", 1, 2, 3);
+        assertFalse(Arrays.equals(original.getTreeHash(), renamed.getTreeHash()));
+        assertFalse(Arrays.equals(child(original, "docs").getTreeHash(), child(renamed, "docs").getTreeHash()));
+        assertArrayEquals(child(original, "bin").getTreeHash(), child(renamed, "bin").getTreeHash());
+
+        // A file and a directory with the same name are different content
+        final DistributionContentItem file = root();
+        file(file, "x", 5, 5);
+        final DistributionContentItem directory = root();
+        directory(directory, "x");
+        assertFalse(Arrays.equals(file.getTreeHash(), directory.getTreeHash()));
+    }
+
+    @Test
+    public void testLeafHash() throws Exception {
+
+        final DistributionContentItem root = tree("readme.txt", 1, 2, 3);
+        final DistributionContentItem readme = child(child(root, "docs"), "readme.txt");
+        final DistributionContentItem jar = child(child(root, "lib"), "tool.jar");
+        assertTrue(JarDiffUtils.isRawLeafComparison("readme.txt"));
+        assertFalse(JarDiffUtils.isRawLeafComparison("tool.jar"));
+
+        // The raw comparison hash for plain files, the metadata hash for the normalized jars
+        assertArrayEquals(readme.getComparisonHash(), readme.getTreeHash());
+        assertArrayEquals(jar.getMetadataHash(), jar.getTreeHash());
+
+        // A jar with other raw content but the same comparison hash changes the tree hash, the opposite does not
+        assertFalse(Arrays.equals(root.getTreeHash(), tree("readme.txt", 1, 2, 4).getTreeHash()));
+        assertArrayEquals(root.getTreeHash(), tree("readme.txt", 1, 5, 3).getTreeHash());
+    }
+
+    @Test
+    public void testKnownTreeHash() throws Exception {
+
+        final HashCache cache = HashCache.current;
+        HashCache.current = null;
+        try {
+            final File docs = folder.newFolder("docs");
+            final DistributionContentItem root = root();
+            final DistributionContentItem directory = item(docs, root);
+            final DistributionContentItem readme = item(ContentFixtures.file(new File(docs, "readme.txt"), "readme"), directory);
+            final DistributionContentItem jar = item(ContentFixtures.jar(new File(docs, "tool.jar"), ZipEntry.DEFLATED,
+                    1000000000000L, "org/T.class", "t"), directory);
+            assertNull(root.getKnownTreeHash());
+
+            // Known only once all leaves of the subtree are hashed
+            readme.getComparisonHash();
+            assertNotNull(readme.getKnownTreeHash());
+            assertNull(jar.getKnownTreeHash());
+            assertNull(root.getKnownTreeHash());
+
+            jar.getMetadataHash();
+            final byte[] hash = root.getKnownTreeHash();
+            assertNotNull(hash);
+            assertArrayEquals(root.getTreeHash(), hash);
+        } finally {
+            HashCache.current = cache;
+        }
+    }
+
+    /**
+     * Create a misc tree.
+     *
+     * @param readme        the name of the readme
+     * @param readmeSeed    the seed of the readme hashes
+     * @param jarComparison the seed of the comparison hash of the jar
+     * @param jarMetadata   the seed of the metadata hash of the jar
+     * @return the root
+     */
+    private static DistributionContentItem tree(final String readme, final int readmeSeed, final int jarComparison, final int jarMetadata) {
+        final DistributionContentItem root = root();
+        file(directory(root, "bin"), "standalone.sh", 10, 11);
+        final DistributionContentItem docs = directory(root, "docs");
+        file(docs, readme, readmeSeed, readmeSeed + 100);
+        file(directory(docs, "licenses"), "a.txt", 12, 13);
+        file(directory(root, "lib"), "tool.jar", jarComparison, jarMetadata);
+        return root;
+    }
+
+    private static DistributionContentItem root() {
+        return new Distribution().getRoot();
+    }
+
+    private static DistributionContentItem directory(final DistributionContentItem parent, final String name) {
+        final DistributionItemImpl item = new DistributionItemImpl(parent, name, IoUtils.NO_CONTENT, IoUtils.NO_CONTENT, false);
+        parent.getChildren().add(item);
+        return item;
+    }
+
+    private static void file(final DistributionContentItem parent, final String name, final int comparison, final int metadata) {
+        parent.getChildren().add(new DistributionItemImpl(parent, name, hash(comparison), hash(metadata), true));
+    }
+
+    private static DistributionContentItem item(final File file, final DistributionContentItem parent) throws IOException {
+        final Path path = file.toPath();
+        final DistributionItemFileImpl item = new DistributionItemFileImpl(path, Files.readAttributes(path, BasicFileAttributes.class), parent);
+        parent.getChildren().add(item);
+        return item;
+    }
+
+    private static DistributionContentItem child(final DistributionContentItem parent, final String name) {
+        for (final DistributionContentItem child : parent.getChildren()) {
+            if (child.getName().equals(name)) {
+                return child;
+            }
+        }
+        throw new AssertionError(name);
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.describe;
+import static org.jboss.as.patching.generator.ContentFixtures.file;
+import static org.jboss.as.patching.generator.ContentFixtures.jar;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class DistributionProcessorTestCase {
+
+    private static final String MODULE_XML = "<module xmlns=\"urn:jboss:module:1.1\" name=\"%s\"><resources>%s</resources></module>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HashCache cache;
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = HashCache.current;
+        HashCache.current = null;
+        root = folder.newFolder("dist");
+        file(new File(root, "bin/standalone.sh"), "#!/bin/sh\nexit 0\n");
+        file(new File(root, "docs/readme.txt"), "readme");
+        file(new File(root, "docs/licenses/a.txt"), "license a");
+        file(new File(root, "docs/licenses/b.txt"), "license b");
+        assertTrue(new File(root, "docs/empty").mkdir());
+        jar(new File(root, "lib/tool.jar"), ZipEntry.DEFLATED, 1000000000000L, "org/T.class", "t");
+        module("modules/system/layers/base/org/foo/main", "org.foo", "foo.jar");
+        module("modules/system/layers/base/org/foo/bar/main", "org.foo.bar");
+        module("modules/system/add-ons/x/org/x/main", "org.x", "x.jar");
+        jar(new File(root, "bundles/system/layers/base/org/b/main/b.jar"), ZipEntry.STORED, 1000000000000L, "org/B.class", "b");
+    }
+
+    @After
+    public void tearDown() {
+        HashCache.current = cache;
+    }
+
+    @Test
+    public void testParallelScan() throws Exception {
+
+        final Distribution sequential = process(1, 0);
+        final byte[] treeHash = sequential.getRoot().getKnownTreeHash();
+        assertNotNull(treeHash);
+        final Map<String, String> expected = describe(sequential);
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("org.foo:main", "org.foo.bar:main")), names(sequential.getLayer("base").getModules()));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("org.b:main")), names(sequential.getLayer("base").getBundles()));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("org.x:main")), names(sequential.getAddOn("x").getModules()));
+
+        for (final int threads : new int[] {2, 4}) {
+            for (final int ioThreads : new int[] {0, 2}) {
+                final Distribution parallel = process(threads, ioThreads);
+                // The misc tree is hashed completely while scanning, not only when describing it
+                assertArrayEquals(threads + "/" + ioThreads, treeHash, parallel.getRoot().getKnownTreeHash());
+                assertEquals(threads + "/" + ioThreads, expected, describe(parallel));
+            }
+        }
+    }
+
+    private Distribution process(final int threads, final int ioThreads) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final HashPipeline pipeline = ioThreads > 0 ? new HashPipeline(ioThreads, pool, threads) : null;
+        try {
+            final Distribution distribution = new Distribution();
+            final Set<Path> moduleRoots = DistributionProcessor.processContent(distribution.getRoot(), root.toPath(), distribution,
+                    pool, pipeline, null, false);
+            assertEquals(new LinkedHashSet<Path>(Arrays.asList(root.toPath().resolve("modules/system/layers/base"),
+                    root.toPath().resolve("modules/system/add-ons/x"))), moduleRoots);
+            return distribution;
+        } finally {
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            pool.shutdown();
+        }
+    }
+
+    private void module(final String path, final String name, final String... jars) throws IOException {
+        final StringBuilder resources = new StringBuilder();
+        for (final String jar : jars) {
+            resources.append("<resource-root path=\"").append(jar).append("\"/>");
+            jar(new File(root, path + "/" + jar), ZipEntry.DEFLATED, 1000000000000L, "org/" + jar + ".class", jar);
+        }
+        file(new File(root, path + "/module.xml"), String.format(MODULE_XML, name, resources));
+    }
+
+    private static Set<String> names(final Set<DistributionModuleItem> items) {
+        final Set<String> names = new LinkedHashSet<String>();
+        for (final DistributionModuleItem item : items) {
+            names.add(item.getFullModuleName());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.describe;
+import static org.jboss.as.patching.generator.ContentFixtures.hash;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jboss.as.patching.IoUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class DistributionSnapshotTestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testXmlRoundTrip() throws Exception {
+
+        final Distribution distribution = createDistribution();
+        final File snapshot = new File(folder.getRoot(), "snapshot.xml");
+        distribution.writeSnapshot(snapshot);
+        assertTrue(Distribution.isSnapshot(snapshot));
+
+        final Distribution loaded = Distribution.load(snapshot);
+        assertEquals(describe(distribution), describe(loaded));
+    }
+
+    @Test
+    public void testXmlIgnoredPaths() throws Exception {
+
+        final File snapshot = new File(folder.getRoot(), "snapshot.xml");
+        createDistribution().writeSnapshot(snapshot);
+
+        final Map<String, String> expected = describe(createDistribution());
+        expected.remove("misc docs/readme.txt");
+        final Distribution loaded = Distribution.load(snapshot, "docs/readme.txt");
+        assertEquals(expected, describe(loaded));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+
+        final Distribution distribution = createDistribution();
+        final File snapshot = new File(folder.getRoot(), "snapshot.bin");
+        distribution.writeSnapshot(snapshot);
+        assertTrue(DistributionSnapshot.isBinarySnapshot(snapshot));
+        assertTrue(Distribution.isSnapshot(snapshot));
+
+        final Distribution loaded = Distribution.load(snapshot);
+        assertEquals(describe(distribution), describe(loaded));
+    }
+
+    @Test
+    public void testBinaryIgnoredPaths() throws Exception {
+
+        final File snapshot = new File(folder.getRoot(), "snapshot.bin");
+        createDistribution().writeSnapshot(snapshot);
+
+        final Map<String, String> expected = describe(createDistribution());
+        expected.remove("layer base module org.jboss.foo:main");
+        expected.remove("misc docs/");
+        expected.remove("misc docs/empty/");
+        expected.remove("misc docs/readme.txt");
+        final Distribution loaded = Distribution.load(snapshot, "docs", "org/jboss/foo/main");
+        assertEquals(expected, describe(loaded));
+    }
+
+    @Test
+    public void testFormatConversion() throws Exception {
+
+        final Map<String, String> expected = describe(createDistribution());
+        final File xml = new File(folder.getRoot(), "snapshot.xml");
+        final File binary = new File(folder.getRoot(), "snapshot.bin");
+        final File converted = new File(folder.getRoot(), "converted.xml");
+
+        createDistribution().writeSnapshot(xml);
+        assertFalse(DistributionSnapshot.isBinarySnapshot(xml));
+        Distribution.readSnapshot(xml).writeSnapshot(binary);
+        Distribution.readSnapshot(binary).writeSnapshot(converted);
+
+        assertEquals(expected, describe(Distribution.load(binary)));
+        assertEquals(expected, describe(Distribution.load(converted)));
+    }
+
+    @Test
+    public void testNotASnapshot() throws Exception {
+
+        final File file = ContentFixtures.file(folder.newFile("standalone.sh"), "#!/bin/sh\nexit 0\n");
+        assertFalse(DistributionSnapshot.isBinarySnapshot(file));
+        assertFalse(Distribution.isSnapshot(file));
+        assertFalse(Distribution.isSnapshot(folder.getRoot()));
+        try {
+            DistributionSnapshot.read(file);
+            fail("not a snapshot");
+        } catch (IOException e) {
+            // good
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDifferentComparisonMode() throws Exception {
+
+        final Distribution distribution = createDistribution();
+        distribution.setComparisonMode((byte) (JarDiffUtils.getComparisonMode() ^ 2));
+        final File snapshot = new File(folder.getRoot(), "snapshot.bin");
+        distribution.writeSnapshot(snapshot);
+        Distribution.load(snapshot);
+    }
+
+    static Distribution createDistribution() {
+        final Distribution distribution = new Distribution();
+        distribution.setName("Test");
+        distribution.setVersion("1.2.3");
+
+        final Distribution.ProcessedLayer base = distribution.addLayer("base");
+        base.getModules().add(new DistributionModuleItem("org.jboss.foo", "main", hash(1), hash(2)));
+        base.getModules().add(new DistributionModuleItem("org.jboss.bar", "main", hash(3), hash(3)));
+        base.getBundles().add(new DistributionModuleItem("org.jboss.baz", "main", hash(4), hash(5)));
+        final Distribution.ProcessedLayer addOn = distribution.addAddOn("x");
+        addOn.getModules().add(new DistributionModuleItem("org.jboss.x", "slot", hash(6), hash(7)));
+
+        final DistributionContentItem root = distribution.getRoot();
+        final DistributionContentItem bin = directory(root, "bin");
+        file(bin, "standalone.sh", 8);
+        file(bin, "h\u00e9llo world.txt", 9);
+        final DistributionContentItem docs = directory(root, "docs");
+        file(docs, "readme.txt", 10);
+        directory(docs, "empty");
+        file(root, "LICENSE", 11);
+        return distribution;
+    }
+
+    private static DistributionContentItem directory(final DistributionContentItem parent, final String name) {
+        final DistributionItemImpl item = new DistributionItemImpl(parent, name, IoUtils.NO_CONTENT, IoUtils.NO_CONTENT, false);
+        parent.getChildren().add(item);
+        return item;
+    }
+
+    private static void file(final DistributionContentItem parent, final String name, final int seed) {
+        parent.getChildren().add(new DistributionItemImpl(parent, name, hash(seed), hash(seed + 100), true));
+    }
+
+}
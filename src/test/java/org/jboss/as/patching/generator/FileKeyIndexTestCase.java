@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.file;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the items of hard linked files share their hashes with {@code --hard-links}.
+ *
+ * @author agent
+ */
+public class FileKeyIndexTestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileKeyIndex index;
+    private HashCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        // File systems without file keys do not support the index at all
+        assumeNotNull(Files.readAttributes(folder.getRoot().toPath(), BasicFileAttributes.class).fileKey());
+        index = FileKeyIndex.current;
+        FileKeyIndex.current = new FileKeyIndex();
+        cache = HashCache.current;
+        HashCache.current = null;
+    }
+
+    @After
+    public void tearDown() {
+        FileKeyIndex.current = index;
+        HashCache.current = cache;
+    }
+
+    @Test
+    public void testHardLinkedFiles() throws Exception {
+
+        final File original = file(new File(folder.getRoot(), "a/bin/standalone.sh"), "#!/bin/sh\nexit 0\n");
+        final File link = link(new File(folder.getRoot(), "b/bin/standalone.sh"), original);
+        final File copy = new File(folder.getRoot(), "c/bin/standalone.sh");
+        assertTrue(copy.getParentFile().mkdirs());
+        Files.copy(original.toPath(), copy.toPath());
+
+        final DistributionItemFileImpl o = item(original);
+        final DistributionItemFileImpl l = item(link);
+        final DistributionItemFileImpl c = item(copy);
+        assertSame(o, o.getCanonical());
+        assertSame(o, l.getCanonical());
+        assertSame(c, c.getCanonical());
+        assertTrue(FileKeyIndex.current.isSameFile(o, l));
+        assertFalse(FileKeyIndex.current.isSameFile(o, c));
+        assertEquals(AttributePrefilter.Result.UNCHANGED, AttributePrefilter.compare(o, l));
+        assertEquals(AttributePrefilter.Result.UNCHANGED, AttributePrefilter.evaluate(o, l));
+
+        // Hashing the original hashes the link as well, but not the copy
+        assertFalse(l.isHashed(true));
+        final byte[] hash = o.getComparisonHash();
+        assertTrue(l.isHashed(true));
+        assertFalse(c.isHashed(true));
+        assertArrayEquals(hash, l.getComparisonHash());
+        assertArrayEquals(hash, c.getComparisonHash());
+    }
+
+    @Test
+    public void testHardLinkedDirectories() throws Exception {
+
+        final File a = new File(folder.getRoot(), "a/module");
+        final File x = file(new File(a, "x.txt"), "x");
+        final File z = file(new File(a, "y/z.jar"), "z");
+
+        final File b = new File(folder.getRoot(), "b/module");
+        link(new File(b, "x.txt"), x);
+        link(new File(b, "y/z.jar"), z);
+
+        // The same content, but not the same physical files
+        final File c = new File(folder.getRoot(), "c/module");
+        link(new File(c, "x.txt"), x);
+        file(new File(c, "y/z.jar"), "z");
+
+        // Additional entries
+        final File d = new File(folder.getRoot(), "d/module");
+        link(new File(d, "x.txt"), x);
+        link(new File(d, "y/z.jar"), z);
+        assertTrue(new File(d, "empty").mkdir());
+
+        final DistributionItemFileImpl original = item(a);
+        assertTrue(FileKeyIndex.current.isSameFile(original, item(b)));
+        assertFalse(FileKeyIndex.current.isSameFile(original, item(c)));
+        assertFalse(FileKeyIndex.current.isSameFile(original, item(d)));
+        assertSame(original, original.getCanonical());
+        assertSame(original, item(b).getCanonical());
+    }
+
+    private static File link(final File link, final File existing) throws IOException {
+        Files.createDirectories(link.toPath().getParent());
+        return Files.createLink(link.toPath(), existing.toPath()).toFile();
+    }
+
+    private static DistributionItemFileImpl item(final File file) throws IOException {
+        final Path path = file.toPath();
+        return new DistributionItemFileImpl(path, Files.readAttributes(path, BasicFileAttributes.class), null);
+    }
+
+}
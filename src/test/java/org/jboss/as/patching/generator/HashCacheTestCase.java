@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.hash;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class HashCacheTestCase {
+
+    private static final byte MODE = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheFile = new File(folder.getRoot(), "hash-cache");
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+
+        final Path a = file("a.txt");
+        final Path b = file("b.jar");
+
+        HashCache cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        HashCache.Entry entry = cache.getEntry(a, stamp(1));
+        assertNull(cache.getMetadataHash(entry));
+        assertNull(cache.getComparisonHash(entry, MODE));
+        entry.setMetadataHash(hash(1));
+        entry.setComparisonHash(MODE, hash(2));
+        cache.getEntry(b, stamp(2)).setMetadataHash(hash(3));
+        assertNull(cache.getJarRawHash("jar"));
+        cache.putJarEntries("jar", hash(4), hash(5));
+        cache.store();
+        assertTrue(cacheFile.isFile());
+
+        cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        entry = cache.getEntry(a, stamp(1));
+        assertArrayEquals(hash(1), cache.getMetadataHash(entry));
+        assertArrayEquals(hash(2), cache.getComparisonHash(entry, MODE));
+        // Comparison hashes of another mode are not reused
+        assertNull(cache.getComparisonHash(entry, (byte) (MODE + 1)));
+        entry = cache.getEntry(b, stamp(2));
+        assertArrayEquals(hash(3), cache.getMetadataHash(entry));
+        assertNull(cache.getComparisonHash(entry, MODE));
+
+        assertArrayEquals(hash(4), cache.getJarRawHash("jar"));
+        assertArrayEquals(hash(5), cache.getJarEntries("jar", hash(4)));
+        // Entries cached for other content are not used
+        assertNull(cache.getJarEntries("jar", hash(6)));
+        assertNull(cache.getJarRawHash("other"));
+    }
+
+    @Test
+    public void testChangedStamp() throws Exception {
+
+        final Path a = file("a.txt");
+        final HashCache cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        final HashCache.Entry entry = cache.getEntry(a, stamp(1));
+        entry.setMetadataHash(hash(1));
+        entry.setComparisonHash(MODE, hash(2));
+        assertSame(entry, cache.getEntry(a, stamp(1)));
+
+        final HashCache.Entry changed = cache.getEntry(a, stamp(2));
+        assertNotSame(entry, changed);
+        assertNull(cache.getMetadataHash(changed));
+        assertNull(cache.getComparisonHash(changed, MODE));
+        assertSame(changed, cache.getEntry(a, stamp(2)));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        final Path a = file("a.txt");
+        final Path b = file("b.txt");
+        final Path c = file("c.txt");
+
+        HashCache cache = HashCache.load(cacheFile, 2);
+        cache.getEntry(a, stamp(1)).setMetadataHash(hash(1));
+        cache.getEntry(b, stamp(2)).setMetadataHash(hash(2));
+        // Using a makes b the least recently used entry
+        cache.getEntry(a, stamp(1));
+        cache.getEntry(c, stamp(3)).setMetadataHash(hash(3));
+        cache.putJarEntries("a", hash(4), hash(4));
+        cache.putJarEntries("b", hash(5), hash(5));
+        cache.getJarRawHash("a");
+        cache.putJarEntries("c", hash(6), hash(6));
+        cache.store();
+
+        // Loading into a smaller cache keeps the most recently used entries
+        cache = HashCache.load(cacheFile, 1);
+        assertArrayEquals(hash(3), cache.getMetadataHash(cache.getEntry(c, stamp(3))));
+        assertArrayEquals(hash(6), cache.getJarRawHash("c"));
+        assertNull(cache.getJarRawHash("a"));
+
+        cache = HashCache.load(cacheFile, 2);
+        assertArrayEquals(hash(1), cache.getMetadataHash(cache.getEntry(a, stamp(1))));
+        assertArrayEquals(hash(3), cache.getMetadataHash(cache.getEntry(c, stamp(3))));
+        assertNull(cache.getMetadataHash(cache.getEntry(b, stamp(2))));
+        assertArrayEquals(hash(4), cache.getJarRawHash("a"));
+        assertNull(cache.getJarRawHash("b"));
+        assertArrayEquals(hash(6), cache.getJarRawHash("c"));
+    }
+
+    @Test
+    public void testChangedIgnores() throws Exception {
+
+        final Path a = file("a.jar");
+        HashCache cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        final HashCache.Entry entry = cache.getEntry(a, stamp(1));
+        entry.setMetadataHash(hash(1));
+        entry.setComparisonHash(MODE, hash(2));
+        cache.putJarEntries("jar", hash(3), hash(4));
+        cache.store();
+
+        JarDiffUtils.ignore(Collections.singleton("**.txt"), Collections.<String>emptySet());
+        try {
+            // Only the metadata hashes do not depend on the ignored entries
+            cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+            final HashCache.Entry loaded = cache.getEntry(a, stamp(1));
+            assertArrayEquals(hash(1), cache.getMetadataHash(loaded));
+            assertNull(cache.getComparisonHash(loaded, MODE));
+            assertNull(cache.getJarRawHash("jar"));
+        } finally {
+            JarDiffUtils.ignore(Collections.<String>emptySet(), Collections.<String>emptySet());
+        }
+    }
+
+    @Test
+    public void testIncompatibleFile() throws Exception {
+
+        final Path a = file("a.txt");
+        ContentFixtures.file(cacheFile, new byte[] {'P', 'G', 'H', 'C', 0, 0, 0, 0});
+        HashCache cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        final HashCache.Entry entry = cache.getEntry(a, stamp(1));
+        assertNull(cache.getMetadataHash(entry));
+        entry.setMetadataHash(hash(1));
+        // The incompatible file is replaced
+        cache.store();
+        cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        assertArrayEquals(hash(1), cache.getMetadataHash(cache.getEntry(a, stamp(1))));
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+
+        final Path a = file("a.txt");
+        HashCache cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+        final HashCache.Entry entry = cache.getEntry(a, stamp(1));
+        entry.setMetadataHash(hash(1));
+        entry.setComparisonHash(MODE, hash(2));
+        cache.putJarEntries("jar", hash(3), hash(4));
+        cache.store();
+
+        final byte[] content = Files.readAllBytes(cacheFile.toPath());
+        for (int length = 0; length < content.length; length++) {
+            Files.write(cacheFile.toPath(), Arrays.copyOf(content, length));
+            cache = HashCache.load(cacheFile, HashCache.DEFAULT_MAX_ENTRIES);
+            // Nothing of a partially read file is used
+            final HashCache.Entry loaded = cache.getEntry(a, stamp(1));
+            assertNull(cache.getMetadataHash(loaded));
+            assertNull(cache.getComparisonHash(loaded, MODE));
+            assertNull(cache.getJarRawHash("jar"));
+        }
+    }
+
+    private Path file(final String name) throws IOException {
+        return ContentFixtures.file(folder.newFile(name), name).toPath();
+    }
+
+    private static ContentStamp stamp(final int seed) {
+        return new ContentStamp(seed, 1000000000000L + seed, 0, "key" + seed);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.jboss.as.patching.generator.ContentFixtures.content;
+import static org.jboss.as.patching.generator.ContentFixtures.sha1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ */
+public class HashPipelineTestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ForkJoinPool pool;
+    private HashCache cache;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+        cache = HashCache.current;
+        HashCache.current = null;
+    }
+
+    @After
+    public void tearDown() {
+        HashCache.current = cache;
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHash() throws Exception {
+
+        final byte[] content = content(3 * HashPipeline.CHUNK_SIZE + 17);
+        final HashPipeline pipeline = new HashPipeline(2, pool, 2);
+        try {
+            final DistributionItemFileImpl item = item("a.bin", content);
+            final DistributionItemFileImpl empty = item("empty.bin", new byte[0]);
+            final HashPipeline.Batch batch = pipeline.newBatch();
+            batch.submit(item, ContentDigest.Algorithm.SHA1, true, true);
+            batch.submit(empty, ContentDigest.Algorithm.SHA1, true, true);
+            batch.await();
+
+            assertArrayEquals(sha1(content), item.getComparisonHash());
+            assertArrayEquals(sha1(content), item.getMetadataHash());
+            assertArrayEquals(sha1(new byte[0]), empty.getMetadataHash());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testFailingDigest() throws Exception {
+
+        final RuntimeException failure = new IllegalStateException("failing digest");
+        final HashPipeline pipeline = new HashPipeline(2, pool, 2) {
+            @Override
+            ContentDigest acquireDigest(final ContentDigest.Algorithm algorithm) {
+                if (algorithm == ContentDigest.Algorithm.SHA1) {
+                    return super.acquireDigest(algorithm);
+                }
+                return new ContentDigest() {
+                    @Override
+                    void update(byte[] b, int off, int len) {
+                        throw failure;
+                    }
+
+                    @Override
+                    byte[] digest() {
+                        return new byte[8];
+                    }
+
+                    @Override
+                    void reset() {
+                        //
+                    }
+                };
+            }
+        };
+        try {
+            final byte[] content = content(2 * HashPipeline.CHUNK_SIZE);
+            final HashPipeline.Batch batch = pipeline.newBatch();
+            batch.submit(item("a.bin", content), ContentDigest.Algorithm.SHA1, true, true);
+            batch.submit(item("b.bin", content), ContentDigest.Algorithm.XXHASH64, true, false);
+            try {
+                batch.await();
+                fail("the failing digest was not reported");
+            } catch (RuntimeException e) {
+                assertSame(failure, e.getCause());
+            }
+
+            // The buffers of the failed job are available again
+            final DistributionItemFileImpl item = item("c.bin", content);
+            final HashPipeline.Batch next = pipeline.newBatch();
+            next.submit(item, ContentDigest.Algorithm.SHA1, false, true);
+            next.await();
+            assertArrayEquals(sha1(content), item.getMetadataHash());
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private DistributionItemFileImpl item(final String name, final byte[] content) throws IOException {
+        final Path path = ContentFixtures.file(folder.newFile(name), content).toPath();
+        return new DistributionItemFileImpl(path, Files.readAttributes(path, BasicFileAttributes.class), null);
+    }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that comparing two jars by their central directories gives the same result as comparing the hashes of
+ * {@link JarDiffUtils#internalJarComparison(java.nio.file.Path)}.
+ *
+ * @author agent
+ */
+public class JarDiffUtilsTestCase {
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String MANIFEST_CONTENT = "Manifest-Version: 1.0\r\nImplementation-Title: test\r\nBuilt-By: a\r\n\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int count;
+    private HashCache cache;
+    private ContentDigest.Algorithm comparison;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = HashCache.current;
+        HashCache.current = null;
+        comparison = ContentDigest.comparison;
+    }
+
+    @After
+    public void tearDown() {
+        HashCache.current = cache;
+        ContentDigest.comparison = comparison;
+    }
+
+    @Test
+    public void testSha1() throws Exception {
+        ContentDigest.comparison = ContentDigest.Algorithm.SHA1;
+        compareVariants();
+    }
+
+    @Test
+    public void testXxHash64() throws Exception {
+        ContentDigest.comparison = ContentDigest.Algorithm.XXHASH64;
+        compareVariants();
+    }
+
+    @Test
+    public void testParallelEntries() throws Exception {
+
+        ContentDigest.comparison = ContentDigest.Algorithm.SHA1;
+        final List<String> entries = new ArrayList<String>(Arrays.asList(MANIFEST, MANIFEST_CONTENT,
+                "META-INF/maven/g/a/pom.properties", "version=1", "org/", null));
+        for (int i = 0; i < 300; i++) {
+            entries.add("org/C" + i + ".class");
+            entries.add("class " + i);
+        }
+        final File jar = jar(ZipEntry.DEFLATED, entries.toArray(new String[entries.size()]));
+        final byte[] sequential = JarDiffUtils.internalJarComparison(jar.toPath());
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        JarDiffUtils.pool = pool;
+        JarDiffUtils.parallelEntries = 1;
+        try {
+            assertArrayEquals(sequential, JarDiffUtils.internalJarComparison(jar.toPath()));
+
+            // Also hashing the raw content keeps a single sequential pass
+            final ContentDigest jarDigest = ContentDigest.Algorithm.SHA1.create();
+            final ContentDigest raw = ContentDigest.Algorithm.SHA1.create();
+            JarDiffUtils.internalJarComparison(jar.toPath(), jarDigest, raw);
+            assertArrayEquals(sequential, jarDigest.digest());
+            assertArrayEquals(FileHashUtils.hashFile(jar.toPath()), raw.digest());
+        } finally {
+            JarDiffUtils.parallelEntries = 0;
+            JarDiffUtils.pool = null;
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testJarKey() throws Exception {
+
+        final File original = jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT, "org/A.class", "a");
+        final File copy = new File(folder.getRoot(), "copy.jar");
+        Files.copy(original.toPath(), copy.toPath());
+        final String key = JarDiffUtils.getJarKey(original.toPath());
+        assertNotNull(key);
+        assertEquals(key, JarDiffUtils.getJarKey(copy.toPath()));
+
+        // The raw DOS times do not depend on the default time zone
+        final TimeZone timeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+            assertEquals(key, JarDiffUtils.getJarKey(original.toPath()));
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Adak"));
+            assertEquals(key, JarDiffUtils.getJarKey(original.toPath()));
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+
+        // The same entries with other timestamps
+        assertNotEquals(key, JarDiffUtils.getJarKey(jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT, "org/A.class", "a").toPath()));
+
+        // A comment containing the signature of the end record
+        final File commented = new File(folder.getRoot(), "commented.jar");
+        final ZipOutputStream os = new ZipOutputStream(new FileOutputStream(commented));
+        try {
+            os.putNextEntry(new ZipEntry("org/A.class"));
+            os.write('a');
+            os.closeEntry();
+            os.setComment("PK\u0005\u0006 and some more");
+        } finally {
+            os.close();
+        }
+        assertNotNull(JarDiffUtils.getJarKey(commented.toPath()));
+
+        assertNull(JarDiffUtils.getJarKey(file("not a zip").toPath()));
+        assertNull(JarDiffUtils.getJarKey(file("").toPath()));
+    }
+
+    private void compareVariants() throws Exception {
+
+        final File original = jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT, "org/", null, "org/A.class", "a",
+                "org/B.class", "b", "META-INF/maven/g/a/pom.properties", "version=1");
+
+        // The same content, compressed differently and with other timestamps
+        assertResult(AttributePrefilter.Result.UNCHANGED, original, jar(ZipEntry.STORED, MANIFEST, MANIFEST_CONTENT,
+                "org/", null, "org/A.class", "a", "org/B.class", "b", "META-INF/maven/g/a/pom.properties", "version=1"));
+
+        // Another order of the entries
+        assertResult(AttributePrefilter.Result.UNCHANGED, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT,
+                "org/B.class", "b", "org/A.class", "a", "META-INF/maven/g/a/pom.properties", "version=1"));
+
+        // Changed ignored entries and manifest attributes
+        assertResult(AttributePrefilter.Result.UNCHANGED, original, jar(ZipEntry.DEFLATED,
+                MANIFEST, MANIFEST_CONTENT.replace("Built-By: a", "Built-By: b"), "org/", null, "org/A.class", "a",
+                "org/B.class", "b", "META-INF/maven/g/a/pom.properties", "version=2", "META-INF/SIGNER.SF", "signature",
+                "org/Messages_$bundle.class", "generated"));
+
+        // Changed content
+        assertResult(AttributePrefilter.Result.MODIFIED, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT,
+                "org/", null, "org/A.class", "a", "org/B.class", "c", "META-INF/maven/g/a/pom.properties", "version=1"));
+        assertResult(AttributePrefilter.Result.MODIFIED, original, jar(ZipEntry.DEFLATED,
+                MANIFEST, MANIFEST_CONTENT.replace("Implementation-Title: test", "Implementation-Title: other"),
+                "org/", null, "org/A.class", "a", "org/B.class", "b", "META-INF/maven/g/a/pom.properties", "version=1"));
+
+        // Swapped content, the names are not part of the hashes
+        assertResult(null, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT,
+                "org/", null, "org/A.class", "b", "org/B.class", "a", "META-INF/maven/g/a/pom.properties", "version=1"));
+
+        // Added, removed and renamed entries
+        assertResult(null, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT,
+                "org/", null, "org/A.class", "a", "org/B.class", "b", "org/C.class", "c"));
+        assertResult(null, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT, "org/A.class", "a"));
+        assertResult(null, original, jar(ZipEntry.DEFLATED, MANIFEST, MANIFEST_CONTENT,
+                "org/", null, "org/A.class", "a", "org/C.class", "b"));
+
+        // Without manifest, or with a manifest the JarInputStream does not pick up
+        assertResult(null, original, jar(ZipEntry.DEFLATED, "org/", null, "org/A.class", "a", "org/B.class", "b"));
+        assertResult(null, original, jar(ZipEntry.DEFLATED, "org/A.class", "a", MANIFEST, MANIFEST_CONTENT,
+                "org/B.class", "b"));
+
+        // Empty jars and files which are not a zip at all
+        assertResult(null, original, jar(ZipEntry.DEFLATED));
+        assertResult(null, original, file("not a zip"));
+        assertResult(null, file("not a zip"), file("not a zip"));
+        assertResult(null, file("not a zip"), file("not a zap"));
+    }
+
+    /**
+     * Assert the result of comparing the central directories, which has to match the result of comparing the hashes
+     * unless it is {@code UNKNOWN}.
+     *
+     * @param expected the expected result, {@code null} if either {@code UNKNOWN} or the result of the hashes is fine
+     * @param original the original jar
+     * @param updated  the updated jar
+     */
+    private static void assertResult(final AttributePrefilter.Result expected, final File original, final File updated) throws Exception {
+        final AttributePrefilter.Result result = JarDiffUtils.compareJars(original.toPath(), updated.toPath());
+        final boolean equal = Arrays.equals(JarDiffUtils.internalJarComparison(original.toPath()),
+                JarDiffUtils.internalJarComparison(updated.toPath()));
+        if (expected != null) {
+            assertEquals(updated.getName(), expected, result);
+        }
+        if (result != AttributePrefilter.Result.UNKNOWN) {
+            assertEquals(updated.getName(), equal ? AttributePrefilter.Result.UNCHANGED : AttributePrefilter.Result.MODIFIED, result);
+        }
+    }
+
+    /**
+     * Create a jar, the entries of every jar have another modification time.
+     *
+     * @param method  the compression method
+     * @param entries the names and content of the entries, {@code null} content for directories
+     * @return the jar
+     */
+    private File jar(final int method, final String... entries) throws IOException {
+        final File file = new File(folder.getRoot(), "test" + count++ + ".jar");
+        return ContentFixtures.jar(file, method, 1000000000000L + count * 3600000L, entries);
+    }
+
+    private File file(final String content) throws IOException {
+        return ContentFixtures.file(new File(folder.getRoot(), "test" + count++ + ".jar"), content);
+    }
+
+}
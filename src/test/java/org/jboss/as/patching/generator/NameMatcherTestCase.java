@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2026, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.as.patching.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class NameMatcherTestCase {
+
+    // The default ignored entries of the JarDiffUtils
+    private static final List<String> DEFAULT_IGNORED_ENTRIES = Arrays.asList(
+            "META-INF/**.SF", "META-INF/**.DSA", "META-INF/INDEX.LIST",
+            "META-INF/maven/**/pom.properties", "META-INF/maven/**/pom.xml", "META-INF/maven/**/effective-pom.xml",
+            "**_$bundle.class", "**_$logger.class", "**_$bundle_**.class", "**_$logger_**.class");
+
+    private static final String[] FRAGMENTS = {"", "META-INF/", "META-INF", "maven/", "org/", "jboss/", "a/", "a", "b",
+            "/", ".SF", ".DSA", "SF", "INDEX.LIST", "pom.properties", "/pom.properties", "pom.xml", "effective-pom.xml",
+            "Foo", "_$bundle", "_$logger", "_$bundle_", "_$logger_", "_$", "$", "_", ".class", "class", "\u00e9"};
+
+    @Test
+    public void testDefaultIgnoredEntries() throws Exception {
+
+        final NameMatcher matcher = new NameMatcher(DEFAULT_IGNORED_ENTRIES);
+        assertTrue(matcher.usesAutomaton());
+
+        assertTrue(matcher.matches("META-INF/JBOSS.SF"));
+        assertTrue(matcher.matches("META-INF/sub/JBOSS.DSA"));
+        assertTrue(matcher.matches("META-INF/INDEX.LIST"));
+        assertTrue(matcher.matches("META-INF/maven/org.jboss/jboss-foo/pom.properties"));
+        assertTrue(matcher.matches("META-INF/maven/org.jboss/jboss-foo/effective-pom.xml"));
+        assertTrue(matcher.matches("org/jboss/as/FooLogger_$logger.class"));
+        assertTrue(matcher.matches("org/jboss/as/FooMessages_$bundle_de.class"));
+
+        assertFalse(matcher.matches("META-INF/MANIFEST.MF"));
+        assertFalse(matcher.matches("META-INF/mavenpom.xml"));
+        assertFalse(matcher.matches("org/jboss/as/FooLogger_$logger.java"));
+        assertFalse(matcher.matches("org/jboss/as/Foo.class"));
+        assertFalse(matcher.matches("JBOSS.SF"));
+
+        // Compare with the checks used before the globs, on all combinations of up to four fragments
+        int count = 0;
+        final int total = FRAGMENTS.length * FRAGMENTS.length * FRAGMENTS.length * FRAGMENTS.length;
+        for (int i = 0; i < total; i++) {
+            final StringBuilder builder = new StringBuilder();
+            for (int j = i; j > 0; j /= FRAGMENTS.length) {
+                builder.append(FRAGMENTS[j % FRAGMENTS.length]);
+            }
+            final String name = builder.toString();
+            assertEquals(name, isIgnoredEntry(name), matcher.matches(name));
+            if (matcher.matches(name)) {
+                count++;
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+
+        final NameMatcher matcher = new NameMatcher(Arrays.asList("a?c", "b/*.txt", "c/**.txt", "d/**/x", "X-Build-*"));
+
+        assertTrue(matcher.matches("abc"));
+        assertFalse(matcher.matches("a/c"));
+        assertFalse(matcher.matches("ac"));
+
+        assertTrue(matcher.matches("b/.txt"));
+        assertTrue(matcher.matches("b/readme.txt"));
+        assertFalse(matcher.matches("b/c/readme.txt"));
+
+        assertTrue(matcher.matches("c/readme.txt"));
+        assertTrue(matcher.matches("c/d/e/readme.txt"));
+        assertFalse(matcher.matches("c/readme.txt/"));
+
+        assertTrue(matcher.matches("d/x"));
+        assertTrue(matcher.matches("d/e/f/x"));
+        assertFalse(matcher.matches("d/ex"));
+        assertFalse(matcher.matches("d/x/y"));
+
+        assertTrue(matcher.matches("X-Build-Number"));
+        assertFalse(matcher.matches("X-Build"));
+
+        assertFalse(new NameMatcher(Collections.<String>emptyList()).matches(""));
+        assertTrue(new NameMatcher(Collections.singletonList("")).matches(""));
+    }
+
+    @Test
+    public void testRegexFallback() throws Exception {
+
+        // Whether the 13th last character is an 'a' needs 2^13 states
+        final StringBuilder glob = new StringBuilder("**a");
+        for (int i = 0; i < 12; i++) {
+            glob.append('?');
+        }
+        final NameMatcher matcher = new NameMatcher(Collections.singletonList(glob.toString()));
+        assertFalse(matcher.usesAutomaton());
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            final char[] name = new char[random.nextInt(20)];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = "ab/".charAt(random.nextInt(3));
+            }
+            final int position = name.length - 13;
+            boolean expected = position >= 0 && name[position] == 'a';
+            for (int j = position + 1; expected && j < name.length; j++) {
+                expected = name[j] != '/';
+            }
+            assertEquals(new String(name), expected, matcher.matches(new String(name)));
+        }
+    }
+
+    @Test
+    public void testAutomatonMatchesRegex() throws Exception {
+
+        final Random random = new Random(42);
+        for (int g = 0; g < 500; g++) {
+            final List<String> globs = new ArrayList<String>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                globs.add(randomString(random, "ab/.*?\u00e9", 7));
+            }
+            final NameMatcher matcher = new NameMatcher(globs);
+            assertTrue(matcher.usesAutomaton());
+            final Pattern pattern = NameMatcher.compile(matcher.getGlobs());
+            for (int i = 0; i < 100; i++) {
+                final String name = randomString(random, "ab/.x\u00e9", 9);
+                final boolean expected = !globs.isEmpty() && pattern.matcher(name).matches();
+                assertEquals(globs + " " + name, expected, matcher.matches(name));
+            }
+        }
+    }
+
+    private static String randomString(final Random random, final String characters, final int maxLength) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(maxLength); i > 0; i--) {
+            builder.append(characters.charAt(random.nextInt(characters.length())));
+        }
+        return builder.toString();
+    }
+
+    // The checks used before the globs
+    private static boolean isIgnoredEntry(final String name) {
+        if (name.startsWith("META-INF/")) {
+            if (name.endsWith(".SF") || name.endsWith(".DSA") || name.equals("META-INF/INDEX.LIST")) {
+                return true;
+            }
+            if (name.startsWith("META-INF/maven/") && (name.endsWith("/pom.properties") || name.endsWith("/pom.xml")
+                    || name.endsWith("/effective-pom.xml"))) {
+                return true;
+            }
+        }
+        return name.endsWith(".class") && (name.endsWith("_$bundle.class") || name.endsWith("_$logger.class")
+                || name.contains("_$bundle_") || name.contains("_$logger_"));
+    }
+
+}
@@ -94,6 +94,58 @@ public class PatchConfigXmlUnitTestCase {
         specifiedContentTest("test-config04.xml");
     }
 
+    @Test
+    public void testDetailedInspectionIncludes() throws Exception {
+
+        final InputStream is = getResource("test-config05.xml");
+        final PatchConfig patchConfig = PatchConfigXml.parse(is);
+        assertTrue(patchConfig.isDetailedInspection());
+        assertEquals(new HashSet<String>(Arrays.asList("base/org/hibernate/**", "*/org/jboss/as/server/main")),
+                patchConfig.getDetailedInspectionPaths());
+
+        validateInRuntimeUse(patchConfig);
+    }
+
+    @Test
+    public void testDetailedInspectionAllModules() throws Exception {
+
+        final InputStream is = getResource("test-config06.xml");
+        final PatchConfig patchConfig = PatchConfigXml.parse(is);
+        assertTrue(patchConfig.isDetailedInspection());
+        assertEquals(Collections.emptySet(), patchConfig.getDetailedInspectionPaths());
+    }
+
+    @Test
+    public void testNoDetailedInspection() throws Exception {
+
+        final InputStream is = getResource("test-config01.xml");
+        final PatchConfig patchConfig = PatchConfigXml.parse(is);
+        assertFalse(patchConfig.isDetailedInspection());
+        assertEquals(Collections.emptySet(), patchConfig.getDetailedInspectionPaths());
+    }
+
+    @Test
+    public void testJarComparison() throws Exception {
+
+        final InputStream is = getResource("test-config07.xml");
+        final PatchConfig patchConfig = PatchConfigXml.parse(is);
+        assertEquals(new HashSet<String>(Arrays.asList("META-INF/**/build-info.properties", "*.txt")),
+                patchConfig.getIgnoredJarEntries());
+        assertEquals(Collections.singleton("X-Build-*"), patchConfig.getIgnoredManifestAttributes());
+        assertFalse(patchConfig.isDetailedInspection());
+
+        validateInRuntimeUse(patchConfig);
+    }
+
+    @Test
+    public void testNoJarComparison() throws Exception {
+
+        final InputStream is = getResource("test-config01.xml");
+        final PatchConfig patchConfig = PatchConfigXml.parse(is);
+        assertEquals(Collections.emptySet(), patchConfig.getIgnoredJarEntries());
+        assertEquals(Collections.emptySet(), patchConfig.getIgnoredManifestAttributes());
+    }
+
     private void specifiedContentTest(String configFile) throws Exception {
 
         final InputStream is = getResource(configFile);